@@ -1,11 +0,0 @@
-package org.sssta.qaq;
-
-import android.graphics.Bitmap;
-
-/**
- * Created by cauchywei on 15/11/21.
- */
-public class BadGlobalCode {
-    public static Bitmap tmpFace;
-    public static Bitmap tmpGreyFace;
-}
@@ -7,22 +7,41 @@ import android.os.Bundle;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.RelativeLayout;
+import android.widget.Toast;
 
 
 import org.adw.library.widgets.discreteseekbar.DiscreteSeekBar;
-import org.sssta.qaq.widget.StickerPropertyModel;
-import org.sssta.qaq.widget.StickerView;
+import org.sssta.qaq.pipeline.Pipeline;
+import org.sssta.qaq.pipeline.PipelineTask;
+import org.sssta.qaq.trace.StageTracer;
+import org.sssta.qaq.utils.BitmapRegistry;
+import org.sssta.qaq.utils.MemoryGovernor;
+import org.sssta.qaq.widget.StickerCompositorView;
+import org.sssta.qaq.widget.StickerExporter;
+import org.sssta.qaq.widget.StickerLayer;
 
 /**
  * Created by mac on 15/11/21.
  */
-public class EditActivity extends Activity {
+public class EditActivity extends Activity implements MemoryGovernor.Client {
+    private static final String STATE_ABOVE_HANDLE = "aboveHandle";
+
     private ImageView previewImageView;
     private DiscreteSeekBar contrastSeekBar,brightnessSeekBar;
     private int currIndex;
     private Bitmap aboveBitmap,modleBitmap,finalBitmap;
     private RelativeLayout preLayout;
-    private StickerView mCurrentView;
+    private StickerCompositorView mCompositor;
+    private int mAboveHandle;
+    /**
+     * 保存状态时给下一个实例多留的一份引用，这个实例继续显示就还回去
+     */
+    private boolean mStateHoldsHandle;
+    private PipelineTask<Bitmap> mExportTask;
+    /**
+     * 合成任务在 MemoryGovernor 里预留的字节数，任务结束时归还
+     */
+    private long mExportReserved;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -33,97 +52,201 @@ public class EditActivity extends Activity {
         brightnessSeekBar = (DiscreteSeekBar)findViewById(R.id.edit_brightness_seek_bar);
         previewImageView = (ImageView) findViewById(R.id.edit_imageview);
         preLayout = (RelativeLayout) findViewById(R.id.edit_prelayout);
-        //stickerView = (StickerView) findViewById(R.id.edit_stickerView);
+        mCompositor = (StickerCompositorView) findViewById(R.id.edit_compositor);
+        findViewById(R.id.edit_undo).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                mCompositor.undo();
+            }
+        });
+        findViewById(R.id.edit_redo).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                mCompositor.redo();
+            }
+        });
         currIndex = getIntent().getExtras().getInt("index");
+        if (savedInstanceState == null) {
+            mAboveHandle = getIntent().getIntExtra(BitmapRegistry.EXTRA_HANDLE, BitmapRegistry.NO_HANDLE);
+            aboveBitmap = BitmapRegistry.acquire(mAboveHandle);
+        } else {
+            // 接管上一个实例在 onSaveInstanceState 里留下的引用
+            mAboveHandle = savedInstanceState.getInt(STATE_ABOVE_HANDLE, BitmapRegistry.NO_HANDLE);
+            aboveBitmap = BitmapRegistry.peek(mAboveHandle);
+        }
+        if (aboveBitmap == null) {
+            mAboveHandle = BitmapRegistry.NO_HANDLE;
+            finish();
+            return;
+        }
 
         init();
+        MemoryGovernor.get(this).register(this);
     }
 
-    private void init(){
-        modleBitmap = BitmapFactory.decodeResource(getResources(),
-                TemplateID.templateIDList.get(currIndex));
-
-        previewImageView.setImageBitmap(modleBitmap);
-        aboveBitmap = TemplateActivity.getAboveBitmap();
-        addStickerView();
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (mStateHoldsHandle) {
+            mStateHoldsHandle = false;
+            BitmapRegistry.release(mAboveHandle);
+        }
+    }
 
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (!mStateHoldsHandle && mAboveHandle != BitmapRegistry.NO_HANDLE) {
+            BitmapRegistry.acquire(mAboveHandle);
+            mStateHoldsHandle = true;
+        }
+        outState.putInt(STATE_ABOVE_HANDLE, mAboveHandle);
+    }
 
-        //previewImageView.setImageBitmap(TemplateActivity.getAboveBitmap());
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        MemoryGovernor.get(this).unregister(this);
+        // 任务随 Activity 一起取消，不会再回调归还预留
+        releaseExportReservation();
+        if (mAboveHandle != BitmapRegistry.NO_HANDLE) {
+            BitmapRegistry.release(mAboveHandle);
+            mAboveHandle = BitmapRegistry.NO_HANDLE;
+        }
     }
 
+    private void init(){
+        modleBitmap = BitmapFactory.decodeResource(getResources(),
+                TemplateID.templateIDList.get(currIndex));
 
-    //添加表情
-    private void addStickerView() {
-        final StickerView stickerView = new StickerView(this);
-        stickerView.setBitmap(aboveBitmap);
-        stickerView.setOperationListener(new StickerView.OperationListener() {
+        previewImageView.setImageBitmap(modleBitmap);
+        mCompositor.setOnLayerChangeListener(new StickerCompositorView.OnLayerChangeListener() {
             @Override
-            public void onDeleteClick() {
-                preLayout.removeView(stickerView);
+            public void onLayerSelected(StickerLayer layer) {
             }
 
             @Override
-            public void onEdit(StickerView stickerView) {
-                mCurrentView.setInEdit(false);
-                mCurrentView = stickerView;
-                mCurrentView.setInEdit(true);
+            public void onLayerRemoved(StickerLayer layer) {
             }
 
             @Override
-            public void onTop(StickerView stickerView) {
-                Bitmap aboveBmp = stickerView.getmBitmap();
-                StickerPropertyModel model = new StickerPropertyModel();
-                stickerView.calculate(model);
-                aboveBmp = Filter.bitmapRotate(Float.parseFloat(""+-model.getDegree()*180/Math.PI)
-                        ,aboveBmp);
-                finalBitmap = Filter.mergeBitmap(aboveBmp, modleBitmap,
-                        getStartX(currIndex, aboveBmp.getWidth(),
-                                modleBitmap.getWidth()),
-                        getStartY(currIndex - 1, aboveBmp.getHeight(),
-                                modleBitmap.getHeight()));
-
-
-                //Log.d("degree",model.getDegree()+"");
-                previewImageView.setImageBitmap(finalBitmap);
-                stickerView.setVisibility(View.INVISIBLE);
+            public void onLayerTop(StickerLayer layer) {
+                mergeLayers();
             }
         });
-        RelativeLayout.LayoutParams lp = new RelativeLayout.LayoutParams(RelativeLayout.LayoutParams.MATCH_PARENT, RelativeLayout.LayoutParams.MATCH_PARENT);
-        //lp.height = aboveBitmap.getHeight();
-        //lp.width = aboveBitmap.getWidth();
-        //stickerView.setTranslationX(aboveBitmap.);
-//        StickerPropertyModel model = new StickerPropertyModel();
-//        model.setDegree(75);
-//        model.setScaling(stickerView.getHeight()/aboveBitmap.getHeight());
-//        stickerView.calculate(model);
-        preLayout.addView(stickerView, lp);
-
-        setCurrentEdit(stickerView);
+        addFaceLayer();
+        // 初始的人脸不算一步编辑
+        mCompositor.clearHistory();
+
+
+        //previewImageView.setImageBitmap(TemplateActivity.getAboveBitmap());
     }
 
-    /**
-     * 设置当前处于编辑模式的贴纸
-     */
-    private void setCurrentEdit(StickerView stickerView) {
-        if (mCurrentView != null) {
-            mCurrentView.setInEdit(false);
+
+    @Override
+    public long getBitmapByteCount() {
+        long bytes = modleBitmap == null ? 0 : modleBitmap.getByteCount();
+        if (finalBitmap != null) {
+            bytes += finalBitmap.getByteCount();
         }
+        return bytes;
+    }
+
+    @Override
+    public int getTrimPriority() {
+        // 编辑结果没有别的地方保存，不能丢
+        return MemoryGovernor.PRIORITY_VISIBLE;
+    }
 
-        mCurrentView = stickerView;
-        stickerView.setInEdit(true);
+    @Override
+    public long trimBitmaps() {
+        return 0;
     }
 
-    private int getStartX(int index, int aboveWidth,int bmpWidth) {
-        double centerX = TemplateID.templateCenterXList.get(index) * bmpWidth;
-//        double width = TemplateID.templateFWidthList.get(index) * bmpWidth;
-        return (int)(centerX - aboveWidth/2);
+    //添加人脸
+    private void addFaceLayer() {
+        mCompositor.addLayer(StickerLayer.bitmap(StickerLayer.TYPE_FACE, aboveBitmap));
     }
 
-    private int getStartY(int index,int aboveHeight,int bmpHeight) {
-        double centerY = TemplateID.templateCenterYList.get(index) * bmpHeight;
-//        double height = TemplateID.templateFHeightList.get(index) * bmpHeight;
-        return (int)(centerY - aboveHeight/2);
+    /**
+     * 按图层当前的矩阵把所有图层合到当前显示的图上，合成后移除这些图层
+     */
+    private void mergeLayers() {
+        if (mExportTask != null) {
+            // 正在合成的还在读底图，取消了也停不下，不能换掉它；图层变了的话它返回时会重来
+            return;
+        }
+        // 合成过一次以后接着往上面画，不能从模板重新开始
+        final Bitmap base = finalBitmap != null ? finalBitmap : modleBitmap;
+        final StickerExporter exporter = StickerExporter.snapshot(previewImageView, base,
+                mCompositor.getLayers());
+        if (exporter == null) {
+            return;
+        }
+        // 结果要作为下一次合成的底图，只按底图的完整分辨率合成，放不下就不合成
+        long bytes = 4L * base.getWidth() * base.getHeight();
+        if (!MemoryGovernor.get(this).reserve(bytes)) {
+            Toast.makeText(this, "内存不足，暂时无法合成", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        mExportReserved = bytes;
+        final int targetWidth = base.getWidth();
+        final int handle = mAboveHandle;
+        mExportTask = Pipeline.get().submit(this, Pipeline.Stage.FILTER, Pipeline.PRIORITY_INTERACTIVE,
+                new PipelineTask<Bitmap>() {
+                    @Override
+                    protected Bitmap run() {
+                        // 脸图层画的是注册表里的图，持有引用防止返回时 onDestroy 回收
+                        if (BitmapRegistry.acquire(handle) == null) {
+                            return null;
+                        }
+                        StageTracer.Span span = StageTracer.begin(StageTracer.COMPOSE);
+                        try {
+                            return exporter.render(targetWidth);
+                        } finally {
+                            span.end();
+                            BitmapRegistry.release(handle);
+                        }
+                    }
+
+                    @Override
+                    protected void onResult(Bitmap result) {
+                        mExportTask = null;
+                        releaseExportReservation();
+                        if (result == null) {
+                            return;
+                        }
+                        if (!exporter.isCurrent(mCompositor.getLayers())) {
+                            // 合成期间图层又动过，按现在的位置重来
+                            result.recycle();
+                            mergeLayers();
+                            return;
+                        }
+                        previewImageView.setImageBitmap(result);
+                        // 上一次的结果已经画进了这一次，模板还要留着
+                        if (finalBitmap != null && finalBitmap != modleBitmap) {
+                            finalBitmap.recycle();
+                        }
+                        finalBitmap = result;
+                        for (StickerLayer layer : exporter.getLayers()) {
+                            mCompositor.removeLayer(layer);
+                        }
+                        // 已经画进模板的图层不能再撤销回来
+                        mCompositor.clearHistory();
+                    }
+
+                    @Override
+                    protected void onError(Exception e) {
+                        super.onError(e);
+                        mExportTask = null;
+                        releaseExportReservation();
+                    }
+                });
     }
 
+    private void releaseExportReservation() {
+        MemoryGovernor.get(this).release(mExportReserved);
+        mExportReserved = 0;
+    }
 
 }
@@ -5,13 +5,9 @@ import android.content.Intent;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.PointF;
 import android.graphics.Rect;
-import android.media.FaceDetector;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Environment;
-import android.os.Handler;
 import android.provider.MediaStore;
 import android.support.v7.app.AppCompatActivity;
 
@@ -29,6 +25,11 @@ import android.widget.Toast;
 import org.sssta.qaq.edit.crop.CropImageView;
 import org.sssta.qaq.edit.operate.OperateUtils;
 import org.sssta.qaq.edit.utils.FileUtils;
+import org.sssta.qaq.pipeline.FacePrefetch;
+import org.sssta.qaq.pipeline.Pipeline;
+import org.sssta.qaq.pipeline.PipelineTask;
+import org.sssta.qaq.trace.StageTracer;
+import org.sssta.qaq.utils.BitmapRegistry;
 import org.sssta.qaq.utils.FaceUtils;
 
 import java.io.File;
@@ -47,8 +48,17 @@ public class FaceDetectorActivity extends AppCompatActivity {
 
     OperateUtils operateUtils;
     private File mCurrentPhotoFile;
-    private FaceDetector faceDetector;
-    private FaceDetector.Face[] faces;
+    private ProgressDialog mDetectDialog;
+    private float mProxyScale = 1f;
+    /**
+     * 检测和缩放都用完之后才能回收的代理图
+     */
+    private Bitmap mProxy;
+    private Bitmap mFittedProxy;
+    private boolean mProxyFitted;
+    private boolean mFaceDetected;
+    private Rect mFaceRect;
+    private int mFaceHandle = BitmapRegistry.NO_HANDLE;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -77,44 +87,82 @@ public class FaceDetectorActivity extends AppCompatActivity {
             @Override
             public void onClick(View v) {
 
-                final Bitmap face = mCropImage.getCroppedImage();
+                StageTracer.Span cropSpan = StageTracer.begin(StageTracer.CROP);
+                final Bitmap face;
+                try {
+                    face = mCropImage.getCroppedImage();
+                } finally {
+                    cropSpan.end();
+                }
                 final ProgressDialog progressDialog = ProgressDialog.show(FaceDetectorActivity.this, "合成", "正在合成");
                 progressDialog.show();
 
-                new AsyncTask(){
+                Pipeline.get().submit(FaceDetectorActivity.this, Pipeline.Stage.FILTER,
+                        Pipeline.PRIORITY_INTERACTIVE, new PipelineTask<Bitmap>() {
 
                     @Override
-                    protected Object doInBackground(Object[] params) {
-                        Bitmap greyFace = Filter.discolor(face);
-                        return Filter.disWhite(FaceUtils.cropFaceEdge(Filter.changeBitmapContrastBrightness(greyFace, 1.8f, -30)));
+                    protected Bitmap run() {
+                        StageTracer.Span span = StageTracer.begin(StageTracer.STYLIZE);
+                        try {
+                            Bitmap greyFace = Filter.equalizeContrast(face);
+                            Bitmap lineArt = Filter.adaptiveThreshold(greyFace);
+                            return Filter.disWhite(FaceUtils.cropFaceEdge(lineArt));
+                        } finally {
+                            span.end();
+                        }
                     }
 
+                    @Override
+                    protected void onResult(Bitmap result) {
+                        releaseFace();
+                        mFaceHandle = BitmapRegistry.register(result);
+                        progressDialog.dismiss();
+                        Intent intent = new Intent(FaceDetectorActivity.this, TemplateActivity.class);
+                        intent.putExtra(BitmapRegistry.EXTRA_HANDLE, mFaceHandle);
+                        intent.putExtra("path", photoPath);
+                        startActivity(intent);
+                    }
 
                     @Override
-                    protected void onPostExecute(Object o) {
-                        BadGlobalCode.tmpFace = ((Bitmap) o);
+                    protected void onError(Exception e) {
+                        super.onError(e);
                         progressDialog.dismiss();
-                        startActivity(new Intent(FaceDetectorActivity.this, TemplateActivity.class));
                     }
-                }.execute();
+                });
             }
         });
 
+        // 布局完成后才知道代理图要缩放到多大，解码和检测在 MainFragment 选图时已经开始了
         mCropImage.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
             @Override
             public boolean onPreDraw() {
                 mCropImage.getViewTreeObserver().removeOnPreDrawListener(this);
+                detectFace();
                 return true;
             }
         });
 
-        new Handler().postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                detectFace();
-            }
-        },300);
-        
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // TemplateActivity 在这之前已经 acquire 过了
+        releaseFace();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        FacePrefetch.cancel(mFaceCallback);
+        releaseFace();
+    }
+
+    private void releaseFace() {
+        if (mFaceHandle != BitmapRegistry.NO_HANDLE) {
+            BitmapRegistry.release(mFaceHandle);
+            mFaceHandle = BitmapRegistry.NO_HANDLE;
+        }
     }
 
     private void findViews() {
@@ -128,78 +176,92 @@ public class FaceDetectorActivity extends AppCompatActivity {
 
     private void detectFace() {
 
-        final Bitmap resizeBmp = operateUtils.compressionFiller(photoPath,
-                mContentLayout);
-        mCropImage.setImageBitmap(resizeBmp);
-
-        final ProgressDialog progressDialog = ProgressDialog.show(this, "识别", "正在识别人脸");
-        progressDialog.show();
-
-        new AsyncTask(){
-
-            @Override
-            protected Object doInBackground(Object[] params) {
-
-                faceDetector = new FaceDetector(resizeBmp.getWidth(), resizeBmp.getHeight(), 1);
-                faces = new FaceDetector.Face[1];
-
-                int nFace = faceDetector.findFaces(resizeBmp, faces);
-                Rect faceRect = null;
-                if (nFace != 0) {
-
-                    FaceDetector.Face face = faces[0];
-                    int faceSize = (int) (face.eyesDistance() * 1.8);
-//                    faceSize += face.eyesDistance() * 0.3;
-
-                    PointF centerFace = new PointF();
-                    face.getMidPoint(centerFace);
-
-                    int tInitX = (int) (centerFace.x - faceSize / 2);
-                    int tInitY = (int) (centerFace.y - faceSize / 2.3);
-
-                    tInitX = Math.max(0, tInitX);
-                    tInitY = Math.max(0, tInitY);
-
-                    int tEndX = tInitX + faceSize;
-                    int tEndY = (int) (tInitY + faceSize + faceSize / 7);
-                    tEndX = Math.min(tEndX, resizeBmp.getWidth());
-                    tEndY = Math.min(tEndY, resizeBmp.getHeight());
-
-
-                    int initX = resizeBmp.getWidth();
-                    int initY = resizeBmp.getHeight();
-                    int endX = 0;
-                    int endY = 0;
-
-                    initX = Math.min(initX, tInitX);
-                    initY = Math.min(initY, tInitY);
-                    endX = Math.max(endX, tEndX);
-                    endY = Math.max(endY, tEndY);
-
-                    faceRect = new Rect((int)(initX-faceSize*0.1),initY,(int)(endX-faceSize*0.1),endY);
-
-
+        mDetectDialog = ProgressDialog.show(this, "识别", "正在识别人脸");
+        FacePrefetch.take(this, photoPath, mFaceCallback);
+    }
 
-                }
+    private final FacePrefetch.Callback mFaceCallback = new FacePrefetch.Callback() {
+        @Override
+        public void onProxyDecoded(Bitmap proxy) {
+            mProxy = proxy;
+            fitProxy(proxy);
+        }
 
-                return faceRect;
-            }
+        @Override
+        public void onFaceDetected(Rect rect) {
+            mFaceDetected = true;
+            mFaceRect = rect;
+            showFaceRect();
+            recycleProxy();
+        }
 
-            @Override
-            protected void onPostExecute(Object o) {
+        @Override
+        public void onFailed(Exception e) {
+            e.printStackTrace();
+            mDetectDialog.dismiss();
+            Toast.makeText(FaceDetectorActivity.this, "图片读取失败", Toast.LENGTH_SHORT).show();
+        }
+    };
+
+    /**
+     * 在后台把代理图缩放到裁剪区域的大小，检测任务同时也在读代理图
+     */
+    private void fitProxy(final Bitmap proxy) {
+        final int layoutHeight = mContentLayout.getHeight();
+        Pipeline.get().submit(this, Pipeline.Stage.FILTER, Pipeline.PRIORITY_INTERACTIVE,
+                new PipelineTask<Bitmap>() {
+                    @Override
+                    protected Bitmap run() {
+                        return operateUtils.compressionFiller(proxy, layoutHeight);
+                    }
 
-                progressDialog.dismiss();
+                    @Override
+                    protected void onResult(Bitmap resizeBmp) {
+                        mProxyFitted = true;
+                        mFittedProxy = resizeBmp;
+                        mProxyScale = resizeBmp.getWidth() / (float) proxy.getWidth();
+                        mCropImage.setImageBitmap(resizeBmp);
+                        showFaceRect();
+                        recycleProxy();
+                    }
 
-                if (o == null) {
-                    Toast.makeText(FaceDetectorActivity.this, "没有检测到人脸，请拖动选框选择脸部区域", Toast.LENGTH_SHORT).show();
-                } else {
-                    Rect rect = (Rect) o;
-                    mCropImage.setCropFrame(rect.left,rect.top,rect.right,rect.bottom);
-                }
-            }
-        }.execute();
+                    @Override
+                    protected void onError(Exception e) {
+                        super.onError(e);
+                        mDetectDialog.dismiss();
+                        Toast.makeText(FaceDetectorActivity.this, "图片读取失败", Toast.LENGTH_SHORT).show();
+                    }
+                });
+    }
 
+    /**
+     * 图片显示出来并且检测完之后才放取景框，先放会被 setImageBitmap 重置
+     */
+    private void showFaceRect() {
+        if (!mProxyFitted || !mFaceDetected) {
+            return;
+        }
+        mDetectDialog.dismiss();
+        Rect rect = mFaceRect;
+        if (rect == null) {
+            Toast.makeText(FaceDetectorActivity.this, "没有检测到人脸，请拖动选框选择脸部区域", Toast.LENGTH_SHORT).show();
+        } else {
+            mCropImage.setCropFrame(rect.left * mProxyScale, rect.top * mProxyScale,
+                    rect.right * mProxyScale, rect.bottom * mProxyScale);
+        }
+    }
 
+    /**
+     * 检测结果送达、缩放也完成后，代理图没人再读了
+     */
+    private void recycleProxy() {
+        if (mProxy == null || !mProxyFitted || !mFaceDetected) {
+            return;
+        }
+        if (mProxy != mFittedProxy) {
+            mProxy.recycle();
+        }
+        mProxy = null;
     }
 
     public String saveBitmap(Bitmap bitmap, String name) {
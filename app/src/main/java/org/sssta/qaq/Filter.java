@@ -9,6 +9,9 @@ import android.graphics.ColorMatrixColorFilter;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 
+import org.sssta.qaq.utils.AdaptiveThreshold;
+import org.sssta.qaq.utils.Clahe;
+
 /**
  * Created by mac on 15/11/21.
  */
@@ -46,6 +49,44 @@ public class Filter {
         return ret;
     }
 
+    /**
+     * 局部自适应二值化，光照不均时比 disWhite 的固定阈值稳定
+     * 背景变成白色，之后仍交给 disWhite 去掉
+     */
+    public static Bitmap adaptiveThreshold(Bitmap srcBmp) {
+        int width = srcBmp.getWidth();
+        int height = srcBmp.getHeight();
+        Bitmap ret = Bitmap.createBitmap(width, height, srcBmp.getConfig());
+
+        int[] pixels = new int[width * height];
+        srcBmp.getPixels(pixels, 0, width, 0, 0, width, height);
+
+        AdaptiveThreshold.sauvola(pixels, width, height,
+                AdaptiveThreshold.defaultRadius(width, height), AdaptiveThreshold.DEFAULT_K);
+
+        ret.setPixels(pixels, 0, width, 0, 0, width, height);
+        return ret;
+    }
+
+    /**
+     * 自适应对比度(CLAHE)，同时去色
+     * 逆光、偏暗的照片不用再手动调对比度和亮度
+     */
+    public static Bitmap equalizeContrast(Bitmap srcBmp) {
+        int width = srcBmp.getWidth();
+        int height = srcBmp.getHeight();
+        Bitmap ret = Bitmap.createBitmap(width, height, srcBmp.getConfig());
+
+        int[] pixels = new int[width * height];
+        srcBmp.getPixels(pixels, 0, width, 0, 0, width, height);
+
+        Clahe.apply(pixels, width, height, Clahe.DEFAULT_TILES, Clahe.DEFAULT_TILES,
+                Clahe.DEFAULT_CLIP_LIMIT);
+
+        ret.setPixels(pixels, 0, width, 0, 0, width, height);
+        return ret;
+    }
+
     public static Bitmap mergeBitmap(Bitmap aboveBitmap,Bitmap backBitmap,int startX,int startY) {
         int abWidth = aboveBitmap.getWidth();
         int abHeight = aboveBitmap.getHeight();
@@ -17,6 +17,7 @@ import android.widget.ImageView;
 import android.widget.Toast;
 
 import org.adw.library.widgets.discreteseekbar.DiscreteSeekBar;
+import org.sssta.qaq.utils.BitmapRegistry;
 
 /**
  * Created by Cauchywei on 15/11/20.
@@ -31,6 +32,7 @@ public class ImageFilterTestActivity extends Activity implements View.OnClickLis
     private DiscreteSeekBar mContrastSeekBar, mBrightnessSeekBar;
 
     float mCurrContrast, mCurrBrightness;
+    private int mSrcHandle;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -42,7 +44,12 @@ public class ImageFilterTestActivity extends Activity implements View.OnClickLis
         mCurrContrast = 50;
 
         //Toast.makeText(this, "aaaa", Toast.LENGTH_SHORT).show();
-        mSrcBitmap = BadGlobalCode.tmpFace;//BitmapFactory.decodeResource(getResources(), R.drawable.avatar);
+        mSrcHandle = getIntent().getIntExtra(BitmapRegistry.EXTRA_HANDLE, BitmapRegistry.NO_HANDLE);
+        mSrcBitmap = BitmapRegistry.acquire(mSrcHandle);
+        if (mSrcBitmap == null) {
+            mSrcHandle = BitmapRegistry.NO_HANDLE;
+            mSrcBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.avatar);
+        }
         mGreyBitmap = greyScale(mSrcBitmap);
         mConvertBitmap = mGreyBitmap;
         mReserveBitmap = mGreyBitmap;
@@ -50,6 +57,12 @@ public class ImageFilterTestActivity extends Activity implements View.OnClickLis
         mTestImageView.setImageBitmap(mSrcBitmap);
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        BitmapRegistry.release(mSrcHandle);
+    }
+
     private void findViews() {
         mTestImageView = (ImageView)findViewById(R.id.test_imageview);
         mSrcButton = (Button)findViewById(R.id.src_button);
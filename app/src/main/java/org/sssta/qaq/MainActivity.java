@@ -13,6 +13,7 @@ import android.support.v7.widget.Toolbar;
 import org.sssta.qaq.fragment.BasePageFragment;
 import org.sssta.qaq.fragment.CollectionFragment;
 import org.sssta.qaq.fragment.GalleryFragment;
+import org.sssta.qaq.fragment.HistoryFragment;
 import org.sssta.qaq.fragment.MainFragment;
 import org.sssta.qaq.widget.SlidingTabLayout;
 
@@ -40,6 +41,7 @@ public class MainActivity extends AppCompatActivity {
         mFragments.add(new MainFragment());
         mFragments.add(new GalleryFragment());
         mFragments.add(new CollectionFragment());
+        mFragments.add(new HistoryFragment());
 
         PagerAdapter adapter = new PagerAdapter(getSupportFragmentManager());
 
@@ -6,7 +6,11 @@ import android.support.design.widget.Snackbar;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
 import android.view.View;
-import android.widget.ImageView;
+import android.widget.Toast;
+
+import org.sssta.qaq.store.FavoritesStore;
+
+import org.sssta.qaq.widget.TiledImageView;
 
 public class PhotoDetailActivity extends AppCompatActivity {
 
@@ -15,8 +19,31 @@ public class PhotoDetailActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_photo_detail);
 
-        ImageView imageView = (ImageView) findViewById(R.id.imageView);
-        imageView.setImageResource(getIntent().getExtras().getInt("id"));
+        TiledImageView imageView = (TiledImageView) findViewById(R.id.imageView);
+        String path = getIntent().getStringExtra("path");
+        if (path != null) {
+            imageView.setImageFile(path);
+        } else {
+            final int id = getIntent().getExtras().getInt("id");
+            imageView.setImageResource(id);
+            // 长按收藏或取消收藏表情
+            imageView.setOnLongClickListener(new View.OnLongClickListener() {
+                @Override
+                public boolean onLongClick(View v) {
+                    FavoritesStore store = FavoritesStore.get(PhotoDetailActivity.this);
+                    if (!store.isLoaded()) {
+                        // 还不知道当前状态，切换会记成相反的操作
+                        Toast.makeText(PhotoDetailActivity.this, "收藏加载中，请稍后再试",
+                                Toast.LENGTH_SHORT).show();
+                        return true;
+                    }
+                    boolean favorite = store.toggle(id);
+                    Toast.makeText(PhotoDetailActivity.this, favorite ? "已收藏" : "已取消收藏",
+                            Toast.LENGTH_SHORT).show();
+                    return true;
+                }
+            });
+        }
         imageView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -0,0 +1,101 @@
+package org.sssta.qaq;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.util.Log;
+
+import org.sssta.qaq.pipeline.Pipeline;
+import org.sssta.qaq.trace.JsonTimelineSink;
+import org.sssta.qaq.trace.StageTracer;
+import org.sssta.qaq.trace.SystemTraceSink;
+import org.sssta.qaq.utils.MemoryGovernor;
+import org.sssta.qaq.utils.ShareCache;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+public class QAQApplication extends Application {
+    private static final String TAG = QAQApplication.class.getSimpleName();
+
+    private static final String TIMELINE_FILE = "qaq-timeline.json";
+
+    private JsonTimelineSink mTimeline;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        registerComponentCallbacks(MemoryGovernor.get(this));
+
+        StageTracer.addSink(new SystemTraceSink());
+        if (BuildConfig.DEBUG) {
+            mTimeline = new JsonTimelineSink();
+            StageTracer.addSink(mTimeline);
+        }
+
+        registerActivityLifecycleCallbacks(new ActivityLifecycleCallbacks() {
+            @Override
+            public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+            }
+
+            @Override
+            public void onActivityStarted(Activity activity) {
+            }
+
+            @Override
+            public void onActivityResumed(Activity activity) {
+            }
+
+            @Override
+            public void onActivityPaused(Activity activity) {
+            }
+
+            @Override
+            public void onActivityStopped(Activity activity) {
+            }
+
+            @Override
+            public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+            }
+
+            @Override
+            public void onActivityDestroyed(Activity activity) {
+                // 以 Activity 为 owner 的任务不再回调，也不再引用它
+                Pipeline.get().cancelAll(activity);
+            }
+        });
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            ShareCache.get(this).trimJpegs();
+        }
+        // 切到后台时导出一次，adb pull 下来就能在 chrome://tracing 里看
+        if (level == TRIM_MEMORY_UI_HIDDEN && mTimeline != null) {
+            exportTimeline();
+        }
+    }
+
+    private void exportTimeline() {
+        File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            return;
+        }
+        File file = new File(dir, TIMELINE_FILE);
+        try {
+            Writer writer = new FileWriter(file);
+            try {
+                mTimeline.writeTo(writer);
+            } finally {
+                writer.close();
+            }
+            Log.d(TAG, "timeline exported to " + file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,45 +1,109 @@
 package org.sssta.qaq;
 
-import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Environment;
-import android.provider.MediaStore;
 import android.support.v4.app.FragmentActivity;
 import android.support.v7.widget.Toolbar;
-import android.util.Log;
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.ImageView;
-import android.widget.LinearLayout;
+import android.widget.Toast;
 
 import com.zzt.library.BooheeScrollView;
-import com.zzt.library.BuildLayerLinearLayout;
+import com.zzt.library.CarouselAdapter;
+
+import org.sssta.qaq.pipeline.Pipeline;
+import org.sssta.qaq.pipeline.PipelineTask;
+import org.sssta.qaq.store.HistoryStore;
+import org.sssta.qaq.thumbnail.ThumbnailLoader;
+import org.sssta.qaq.trace.StageTracer;
+import org.sssta.qaq.utils.BitmapRegistry;
+import org.sssta.qaq.utils.GalleryExporter;
+import org.sssta.qaq.utils.MemoryGovernor;
+import org.sssta.qaq.utils.ShareCache;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.util.List;
 import java.util.zip.Inflater;
 
 /**
  * Created by mac on 15/11/21.
  */
-public class TemplateActivity extends FragmentActivity{
+public class TemplateActivity extends FragmentActivity implements MemoryGovernor.Client {
     private static final String TAG = TemplateActivity.class.getSimpleName();
 
     private BooheeScrollView mBooheeScrollView;
-    private BuildLayerLinearLayout mBuildLayerLinearLayout;
     private ImageView preViewImageView;
     //private StickerView stickerView;
     private List<Integer> imageViews = TemplateID.templateIDList;
 
-    private static Bitmap aboveBitmap,finalBitmap;
+    private static final String STATE_ABOVE_HANDLE = "aboveHandle";
+    private static final String STATE_FACE_HASH = "faceHash";
+
+    /**
+     * 轮播停下这么久之后开始提前编码分享图
+     */
+    private static final long EAGER_ENCODE_DELAY_MS = 500;
+
+    /**
+     * 滑动中的预览按这个采样率解码模板，像素是完整合成的 1/16
+     */
+    private static final int PREVIEW_SAMPLE_SIZE = 4;
+    private static final int PREVIEW_CACHE_BYTES = 2 * 1024 * 1024;
+
+    private Bitmap aboveBitmap,finalBitmap;
+    private int mAboveHandle = BitmapRegistry.NO_HANDLE;
+    /**
+     * 保存状态时给下一个实例多留的一份引用，这个实例继续显示就还回去
+     */
+    private boolean mStateHoldsHandle;
     private int currIndex;
+    private boolean hasComposite;
+    private boolean isStarted;
+    /**
+     * 脸的内容哈希，在后台算，算好之前分享不走缓存
+     */
+    private long mFaceHash;
+    private boolean mFaceHashReady;
+    /**
+     * finalBitmap 的合成参数
+     */
+    private Composite mComposite;
+    /**
+     * 原图路径，记进历史
+     */
+    private String mSourcePath;
+    private PipelineTask<byte[]> mEagerEncodeTask;
+    /**
+     * 根据松手时预测的吸附位置提前在后台合成的结果
+     */
+    private Composite mPrerendered;
+    private PipelineTask<Composite> mPrerenderTask;
+    /**
+     * 预合成任务在 MemoryGovernor 里预留的字节数，结果交给 mPrerendered 或任务结束时归还
+     */
+    private long mPrerenderReserved;
+    private int mPrerenderIndex = -1;
+    /**
+     * 轮播已经停到预合成的位置，等它完成后直接显示
+     */
+    private boolean mShowWhenPrerendered;
+    /**
+     * finalBitmap 对应的模板，显示预览时为 -1
+     */
+    private int mShownIndex = -1;
+    private PipelineTask<Bitmap> mPreviewTask;
+    private long mPreviewReserved;
+    private final LruCache<Integer, Bitmap> mPreviews = new LruCache<Integer, Bitmap>(PREVIEW_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(Integer key, Bitmap value) {
+            return value.getByteCount();
+        }
+    };
 
     private View mShareView;
 
@@ -48,10 +112,26 @@ public class TemplateActivity extends FragmentActivity{
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_template);
 
+        if (savedInstanceState != null) {
+            // 接管上一个实例在 onSaveInstanceState 里留下的引用
+            mAboveHandle = savedInstanceState.getInt(STATE_ABOVE_HANDLE, BitmapRegistry.NO_HANDLE);
+            aboveBitmap = BitmapRegistry.peek(mAboveHandle);
+        } else {
+            preTreatmentBitmap(getIntent().getIntExtra(BitmapRegistry.EXTRA_HANDLE,
+                    BitmapRegistry.NO_HANDLE));
+        }
+        if (aboveBitmap == null) {
+            mAboveHandle = BitmapRegistry.NO_HANDLE;
+            finish();
+            return;
+        }
+        if (savedInstanceState != null && savedInstanceState.containsKey(STATE_FACE_HASH)) {
+            mFaceHash = savedInstanceState.getLong(STATE_FACE_HASH);
+            mFaceHashReady = true;
+        }
+        mSourcePath = getIntent().getStringExtra("path");
 
-        preTreatmentBitmap();
         mBooheeScrollView = (BooheeScrollView) findViewById(R.id.scrollGallery_horizontal);
-        mBuildLayerLinearLayout = (BuildLayerLinearLayout) findViewById(R.id.scrollGallery_linear);
         preViewImageView = (ImageView) findViewById(R.id.scroll_gallery_iv);
         mShareView = findViewById(R.id.imageView_share);
         //stickerView = (StickerView)findViewById(R.id.sticker_view);
@@ -60,20 +140,118 @@ public class TemplateActivity extends FragmentActivity{
         mShareView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                Intent i = new Intent();
-                i.setType("image/*");
-                i.setAction(Intent.ACTION_SEND);
-                i.putExtra(Intent.EXTRA_STREAM, saveImageToGallery(TemplateActivity.this, finalBitmap));
-                startActivity(Intent.createChooser(i, "Share"));
+                shareComposite();
             }
         });
 
         initScrollView();
+        MemoryGovernor.get(this).register(this);
+        if (!mFaceHashReady) {
+            hashFace();
+        }
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        isStarted = true;
+        // 不可见时合成图可能被回收了
+        if (hasComposite && finalBitmap == null) {
+            renderComposite(currIndex);
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (mStateHoldsHandle) {
+            mStateHoldsHandle = false;
+            BitmapRegistry.release(mAboveHandle);
+        }
     }
 
-    private void preTreatmentBitmap() {
-        aboveBitmap = BadGlobalCode.tmpFace;
-        aboveBitmap = Filter.disWhite(aboveBitmap);
+    @Override
+    protected void onStop() {
+        super.onStop();
+        isStarted = false;
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (!mStateHoldsHandle && mAboveHandle != BitmapRegistry.NO_HANDLE) {
+            BitmapRegistry.acquire(mAboveHandle);
+            mStateHoldsHandle = true;
+        }
+        outState.putInt(STATE_ABOVE_HANDLE, mAboveHandle);
+        if (mFaceHashReady) {
+            outState.putLong(STATE_FACE_HASH, mFaceHash);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        MemoryGovernor.get(this).unregister(this);
+        // 任务随 Activity 一起取消，不会再回调归还预留
+        releasePrerenderReservation();
+        releasePreviewReservation();
+        if (mShareView != null) {
+            mShareView.removeCallbacks(mEagerEncode);
+        }
+        if (mBooheeScrollView != null) {
+            // 卡片不走回收就不会交还缩略图，引用计数一直占着
+            mBooheeScrollView.recycleChildViews();
+        }
+        if (mAboveHandle != BitmapRegistry.NO_HANDLE) {
+            BitmapRegistry.release(mAboveHandle);
+            mAboveHandle = BitmapRegistry.NO_HANDLE;
+        }
+    }
+
+    private void preTreatmentBitmap(int faceHandle) {
+        Bitmap face = BitmapRegistry.acquire(faceHandle);
+        if (face == null) {
+            return;
+        }
+        aboveBitmap = Filter.disWhite(face);
+        BitmapRegistry.release(faceHandle);
+        mAboveHandle = BitmapRegistry.register(aboveBitmap);
+    }
+
+    /**
+     * 哈希要读脸的每个像素，放到后台，期间持有一份引用防止 onDestroy 回收
+     */
+    private void hashFace() {
+        final int handle = mAboveHandle;
+        Pipeline.get().submit(this, Pipeline.Stage.FILTER, Pipeline.PRIORITY_BACKGROUND,
+                new PipelineTask<Long>() {
+                    @Override
+                    protected Long run() {
+                        Bitmap face = BitmapRegistry.acquire(handle);
+                        if (face == null) {
+                            return null;
+                        }
+                        try {
+                            return ShareCache.hashPixels(face);
+                        } finally {
+                            BitmapRegistry.release(handle);
+                        }
+                    }
+
+                    @Override
+                    protected void onResult(Long hash) {
+                        if (hash == null) {
+                            return;
+                        }
+                        mFaceHash = hash;
+                        mFaceHashReady = true;
+                        if (finalBitmap != null
+                                && mBooheeScrollView.getScrollPhase() == BooheeScrollView.SCROLL_PHASE_IDLE) {
+                            scheduleEagerEncode();
+                        }
+                    }
+                });
     }
 
     private void initScrollView() {
@@ -85,84 +263,399 @@ public class TemplateActivity extends FragmentActivity{
             public void onClick(View v) {
                 Intent i = new Intent(TemplateActivity.this,EditActivity.class);
                 i.putExtra("index",currIndex);
+                i.putExtra(BitmapRegistry.EXTRA_HANDLE, mAboveHandle);
                 startActivity(i);
             }
         });
     }
 
-    public static Bitmap getAboveBitmap() {
-        return aboveBitmap;
-    }
-
     private void setPreview() {
         mBooheeScrollView.setAnimType(BooheeScrollView.REBOUND_ANIM);
         mBooheeScrollView.setScrollChangeListener(new BooheeScrollView.OnScrollChangeListener() {
             @Override
             public void OnScrollChange(int centerViewIndex) {
                 if (centerViewIndex > 0 && centerViewIndex <= imageViews.size()) {
+                    currIndex = centerViewIndex - 1;
+                    if (mBooheeScrollView.getScrollPhase() == BooheeScrollView.SCROLL_PHASE_IDLE) {
+                        renderComposite(currIndex);
+                        scheduleEagerEncode();
+                    } else {
+                        // 滑过去的模板只给低分辨率预览，停下后再完整合成
+                        showPreview(currIndex);
+                    }
+                }
+            }
+        });
+        mBooheeScrollView.setScrollPhaseListener(new BooheeScrollView.OnScrollPhaseListener() {
+            @Override
+            public void onScrollPhaseChanged(int phase) {
+                if (phase != BooheeScrollView.SCROLL_PHASE_IDLE) {
+                    mShareView.removeCallbacks(mEagerEncode);
+                    return;
+                }
+                if (mShownIndex != currIndex || finalBitmap == null) {
+                    renderComposite(currIndex);
+                }
+                scheduleEagerEncode();
+            }
+        });
+        mBooheeScrollView.setSnapListener(new BooheeScrollView.OnSnapListener() {
+            @Override
+            public void onSnapPredicted(int targetIndex) {
+                if (targetIndex > 0 && targetIndex <= imageViews.size()) {
+                    prerenderComposite(targetIndex - 1);
+                }
+            }
+        });
+    }
 
-                    Bitmap modelBitmap = BitmapFactory.decodeResource(getResources(),
-                            imageViews.get(centerViewIndex - 1));
-
-                    Bitmap scaleAboveBitmap = scaleAboveBitmap(centerViewIndex - 1, modelBitmap);
+    /**
+     * 一次合成的结果和决定它内容的参数
+     */
+    private static class Composite {
+        final int index;
+        final Bitmap bitmap;
+        final String templateName;
+        final float angle;
+        final int left, top, width, height;
+
+        Composite(int index, Bitmap bitmap, String templateName, float angle,
+                  int left, int top, int width, int height) {
+            this.index = index;
+            this.bitmap = bitmap;
+            this.templateName = templateName;
+            this.angle = angle;
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+        }
 
-                    Bitmap rotatedBitmap = Filter.bitmapRotate(TemplateID.templateSpinAngleList.
-                            get(centerViewIndex - 1).floatValue(),scaleAboveBitmap);
+        long key(long faceHash) {
+            return ShareCache.key(faceHash, templateName, angle, left, top, width, height);
+        }
+    }
 
-                    Bitmap newBitmap = Filter.mergeBitmap(rotatedBitmap, modelBitmap,
-                            getStartX(centerViewIndex - 1, scaleAboveBitmap.getWidth(),
-                                    modelBitmap.getWidth()),
-                            getStartY(centerViewIndex - 1, scaleAboveBitmap.getHeight(),
-                                    modelBitmap.getHeight()));
-                    finalBitmap = newBitmap;
+    /**
+     * 松手时在后台合成预测的目标模板，吸附动画落地时通常已经好了
+     */
+    private void prerenderComposite(final int index) {
+        if ((mShownIndex == index && finalBitmap != null) || index == mPrerenderIndex) {
+            return;
+        }
+        if (mPrerenderTask != null) {
+            mPrerenderTask.cancel();
+            mPrerenderTask = null;
+            releasePrerenderReservation();
+        }
+        mPrerendered = null;
+        mPrerenderIndex = -1;
+        // 放不下时不预合成，停下后由 renderComposite 再决定
+        final int sampleSize = reserveComposite(index);
+        if (sampleSize == 0) {
+            return;
+        }
+        mPrerenderReserved = compositeBytes(index, sampleSize);
+        mPrerenderIndex = index;
+        mShowWhenPrerendered = false;
+        final int handle = mAboveHandle;
+        mPrerenderTask = Pipeline.get().submit(this, Pipeline.Stage.FILTER, Pipeline.PRIORITY_INTERACTIVE,
+                new PipelineTask<Composite>() {
+                    @Override
+                    protected Composite run() {
+                        // 已经开始的任务取消不掉，持有引用防止返回时 onDestroy 回收脸
+                        Bitmap face = BitmapRegistry.acquire(handle);
+                        if (face == null) {
+                            return null;
+                        }
+                        StageTracer.Span span = StageTracer.begin(StageTracer.COMPOSE + "#" + index);
+                        try {
+                            return buildComposite(index, sampleSize, face);
+                        } finally {
+                            span.end();
+                            BitmapRegistry.release(handle);
+                        }
+                    }
+
+                    @Override
+                    protected void onResult(Composite composite) {
+                        mPrerenderTask = null;
+                        releasePrerenderReservation();
+                        if (composite == null) {
+                            mPrerenderIndex = -1;
+                            return;
+                        }
+                        // 等待期间又滑到了别处时只留着备用
+                        if (mShowWhenPrerendered && index == currIndex) {
+                            mShowWhenPrerendered = false;
+                            mPrerenderIndex = -1;
+                            showComposite(composite);
+                        } else {
+                            mPrerendered = composite;
+                        }
+                    }
+
+                    @Override
+                    protected void onError(Exception e) {
+                        super.onError(e);
+                        mPrerenderTask = null;
+                        releasePrerenderReservation();
+                        mPrerenderIndex = -1;
+                        if (mShowWhenPrerendered && index == currIndex) {
+                            renderComposite(index);
+                        }
+                    }
+                });
+    }
 
-                    currIndex = centerViewIndex - 1;
+    /**
+     * 把脸合成到第 index 个模板上并显示
+     */
+    private void renderComposite(int index) {
+        if (index == mPrerenderIndex) {
+            if (mPrerendered != null) {
+                Composite composite = mPrerendered;
+                mPrerendered = null;
+                mPrerenderIndex = -1;
+                showComposite(composite);
+            } else {
+                // 预合成还在跑，不在主线程重复做一遍
+                mShowWhenPrerendered = true;
+            }
+            return;
+        }
+        int sampleSize = reserveComposite(index);
+        if (sampleSize == 0) {
+            // 连半分辨率都放不下，先显示低分辨率预览
+            showPreview(index);
+            return;
+        }
+        StageTracer.Span span = StageTracer.begin(StageTracer.COMPOSE + "#" + index);
+        try {
+            showComposite(buildComposite(index, sampleSize, aboveBitmap));
+        } finally {
+            span.end();
+            MemoryGovernor.get(this).release(compositeBytes(index, sampleSize));
+        }
+    }
 
-//                    RelativeLayout.LayoutParams layoutParams =
-//                            (RelativeLayout.LayoutParams)stickerView.getLayoutParams();
-//                    layoutParams.width = scaleAboveBitmap.getWidth();
-//                    layoutParams.height = scaleAboveBitmap.getHeight();
-//                    stickerView.setLayoutParams(layoutParams);
-//                    operateView = new OperateView(TemplateActivity.this,scaleAboveBitmap);
-//                    //if (previewLayout.getChildCount() == 0) {
-//                    previewLayout.removeAllViews();
-//                        previewLayout.addView(operateView);
-//                        Bitmap rotateBmp = BitmapFactory.decodeResource(getResources(),R.mipmap.ic_sticker_control);
-//                        Bitmap deleteBmp = BitmapFactory.decodeResource(getResources(),R.mipmap.ic_sticker_delete);
-//                        operateView.addItem(new ImageObject(scaleAboveBitmap,rotateBmp,deleteBmp));
-//                        operateView.setX(getStartX(centerViewIndex - 1, scaleAboveBitmap.getWidth(),
-//                                modelBitmap.getWidth()));
-//                        operateView.setY(getStartY(centerViewIndex - 1, scaleAboveBitmap.getHeight(),
-//                                modelBitmap.getHeight()));
-//
-////                    }
-
-                    preViewImageView.setImageBitmap(newBitmap);
-                }
+    /**
+     * 合成前在主线程预留内存，完整分辨率放不下时降到一半。
+     * 预留的是 {@link #compositeBytes}，合成交出去以后调用方负责归还
+     *
+     * @return 合成用的采样率，0 表示放不下，不要合成
+     */
+    private int reserveComposite(int index) {
+        MemoryGovernor governor = MemoryGovernor.get(this);
+        for (int sampleSize = 1; sampleSize <= 2; sampleSize *= 2) {
+            if (governor.reserve(compositeBytes(index, sampleSize))) {
+                return sampleSize;
             }
-        });
+        }
+        return 0;
+    }
+
+    /**
+     * 合成的峰值字节数：解码出的模板加上同样大小的合成结果，脸相对模板很小不计
+     */
+    private long compositeBytes(int index, int sampleSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        options.inSampleSize = sampleSize;
+        BitmapFactory.decodeResource(getResources(), imageViews.get(index), options);
+        return 2L * options.outWidth * options.outHeight * 4;
+    }
+
+    private void showComposite(Composite composite) {
+        finalBitmap = composite.bitmap;
+        mComposite = composite;
+        mShownIndex = composite.index;
+        hasComposite = true;
+        preViewImageView.setImageBitmap(composite.bitmap);
+    }
+
+    /**
+     * 滑过的模板显示低分辨率预览，没有缓存时在后台合成，好了以后还停在这个模板上才显示
+     */
+    private void showPreview(final int index) {
+        // 预览不能拿去分享，完整合成在停下后重新生成
+        finalBitmap = null;
+        mComposite = null;
+        mShownIndex = -1;
+        Bitmap preview = mPreviews.get(index);
+        if (preview != null) {
+            preViewImageView.setImageBitmap(preview);
+            return;
+        }
+        if (mPreviewTask != null) {
+            // 只有最新滑到的那个还有用
+            mPreviewTask.cancel();
+            mPreviewTask = null;
+            releasePreviewReservation();
+        }
+        long bytes = compositeBytes(index, PREVIEW_SAMPLE_SIZE);
+        if (!MemoryGovernor.get(this).reserve(bytes)) {
+            return;
+        }
+        mPreviewReserved = bytes;
+        final int handle = mAboveHandle;
+        mPreviewTask = Pipeline.get().submit(this, Pipeline.Stage.FILTER, Pipeline.PRIORITY_INTERACTIVE,
+                new PipelineTask<Bitmap>() {
+                    @Override
+                    protected Bitmap run() {
+                        Bitmap face = BitmapRegistry.acquire(handle);
+                        if (face == null) {
+                            return null;
+                        }
+                        try {
+                            return buildComposite(index, PREVIEW_SAMPLE_SIZE, face).bitmap;
+                        } finally {
+                            BitmapRegistry.release(handle);
+                        }
+                    }
+
+                    @Override
+                    protected void onResult(Bitmap preview) {
+                        mPreviewTask = null;
+                        releasePreviewReservation();
+                        if (preview == null) {
+                            return;
+                        }
+                        mPreviews.put(index, preview);
+                        // 这期间已经停下显示了完整合成，或者滑到了别处
+                        if (index == currIndex && finalBitmap == null) {
+                            preViewImageView.setImageBitmap(preview);
+                        }
+                    }
+
+                    @Override
+                    protected void onError(Exception e) {
+                        super.onError(e);
+                        mPreviewTask = null;
+                        releasePreviewReservation();
+                    }
+                });
+    }
+
+    private void releasePrerenderReservation() {
+        MemoryGovernor.get(this).release(mPrerenderReserved);
+        mPrerenderReserved = 0;
+    }
+
+    private void releasePreviewReservation() {
+        MemoryGovernor.get(this).release(mPreviewReserved);
+        mPreviewReserved = 0;
+    }
+
+    /**
+     * 只读 face 和资源，可以在后台线程调用，这时调用方要持有 face 的引用
+     *
+     * @param sampleSize 模板的解码采样率，脸按缩小后的模板缩放
+     */
+    private Composite buildComposite(int index, int sampleSize, Bitmap face) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        Bitmap modelBitmap = BitmapFactory.decodeResource(getResources(),
+                imageViews.get(index), options);
+
+        Bitmap scaleAboveBitmap = scaleAboveBitmap(index, modelBitmap, face);
+
+        float angle = TemplateID.templateSpinAngleList.get(index).floatValue();
+        Bitmap rotatedBitmap = Filter.bitmapRotate(angle, scaleAboveBitmap);
+
+        int startX = getStartX(index, scaleAboveBitmap.getWidth(), modelBitmap.getWidth());
+        int startY = getStartY(index, scaleAboveBitmap.getHeight(), modelBitmap.getHeight());
+        Bitmap newBitmap = Filter.mergeBitmap(rotatedBitmap, modelBitmap, startX, startY);
+        Composite composite = new Composite(index, newBitmap,
+                getResources().getResourceEntryName(imageViews.get(index)),
+                angle, startX, startY, scaleAboveBitmap.getWidth(), scaleAboveBitmap.getHeight());
+        // 中间结果马上还掉，峰值只有模板加合成结果
+        modelBitmap.recycle();
+        rotatedBitmap.recycle();
+        if (scaleAboveBitmap != face) {
+            scaleAboveBitmap.recycle();
+        }
+        return composite;
+    }
+
+    @Override
+    public long getBitmapByteCount() {
+        long bytes = (finalBitmap == null ? 0 : finalBitmap.getByteCount()) + mPreviews.size();
+        if (mPrerendered != null) {
+            bytes += mPrerendered.bitmap.getByteCount();
+        }
+        return bytes;
+    }
+
+    @Override
+    public int getTrimPriority() {
+        return isStarted ? MemoryGovernor.PRIORITY_VISIBLE : MemoryGovernor.PRIORITY_HIDDEN;
+    }
+
+    @Override
+    public long trimBitmaps() {
+        long freed = getBitmapByteCount();
+        preViewImageView.setImageBitmap(null);
+        finalBitmap = null;
+        mComposite = null;
+        mShownIndex = -1;
+        mPreviews.evictAll();
+        if (mPrerendered != null) {
+            mPrerendered = null;
+            mPrerenderIndex = -1;
+        }
+        return freed;
     }
 
     private void initChildView() {
-        ImageView emptyStartImageView = new ImageView(this);
-        emptyStartImageView.setLayoutParams(new LinearLayout.LayoutParams(400, 600));
-        ImageView emptyLastImageView = new ImageView(this);
-        emptyLastImageView.setLayoutParams(new LinearLayout.LayoutParams(400, 600));
+        mBooheeScrollView.setAdapter(new TemplateCarouselAdapter());
+    }
 
-        View[] views = new View[imageViews.size()+2];
+    /**
+     * 模板轮播，首尾各有一个占位让第一个和最后一个模板也能滑到中间。
+     * 卡片按格子大小异步解码，滑出去时交还缩略图
+     */
+    private class TemplateCarouselAdapter extends CarouselAdapter {
+        private static final int SPACER_WIDTH = 400;
 
-        views[0] = emptyStartImageView;
-        views[imageViews.size()+1] = emptyLastImageView;
-        mBuildLayerLinearLayout.addView(emptyStartImageView);
+        private final ThumbnailLoader mLoader = ThumbnailLoader.get(TemplateActivity.this);
+        private final int mCardWidth = getResources().getDimensionPixelSize(R.dimen.template_card_width);
+        private final int mThumbnailSize = getResources().getDimensionPixelSize(R.dimen.template_card_image_height);
 
-        for (int i = 0;i<imageViews.size();i++) {
-            View imageView = getNewImageView(imageViews.get(i));
-            mBuildLayerLinearLayout.addView(imageView);
-            views[i+1] = imageView;
+        @Override
+        public int getCount() {
+            return imageViews.size() + 2;
         }
-        mBuildLayerLinearLayout.addView(emptyLastImageView);
 
-        mBooheeScrollView.setChildViews(views);
+        @Override
+        public int getItemWidth(int position) {
+            return isSpacer(position) ? SPACER_WIDTH : mCardWidth;
+        }
+
+        @Override
+        public View onCreateView(ViewGroup parent) {
+            return LayoutInflater.from(TemplateActivity.this).inflate(R.layout.face_card, parent, false);
+        }
+
+        @Override
+        public void onBindView(View view, int position) {
+            ImageView imageView = (ImageView) view.findViewById(R.id.imageView_template);
+            if (isSpacer(position)) {
+                view.setVisibility(View.INVISIBLE);
+                return;
+            }
+            view.setVisibility(View.VISIBLE);
+            mLoader.load(imageView, ThumbnailLoader.Source.resource(imageViews.get(position - 1)), mThumbnailSize);
+        }
+
+        @Override
+        public void onRecycleView(View view) {
+            mLoader.cancel((ImageView) view.findViewById(R.id.imageView_template));
+        }
+
+        private boolean isSpacer(int position) {
+            return position == 0 || position == imageViews.size() + 1;
+        }
     }
 
     private int getStartX(int index, int aboveWidth,int bmpWidth) {
@@ -177,58 +670,115 @@ public class TemplateActivity extends FragmentActivity{
         return (int)(centerY - aboveHeight/2);
     }
 
-    private Bitmap scaleAboveBitmap(int index,Bitmap modelBitmap) {
+    private Bitmap scaleAboveBitmap(int index,Bitmap modelBitmap,Bitmap face) {
         double faceHeight = TemplateID.templateFHeightList.get(index) * modelBitmap.getHeight();
         double faceWidth = TemplateID.templateFWidthList.get(index) * modelBitmap.getWidth();
-        double aboveHeight = aboveBitmap.getHeight();
-        double aboveWidth = aboveBitmap.getWidth();
+        double aboveHeight = face.getHeight();
+        double aboveWidth = face.getWidth();
 
         if (aboveHeight/aboveWidth > 1) {
-            return Filter.scaleBitmap(aboveBitmap,(float)(faceHeight/aboveHeight));
+            return Filter.scaleBitmap(face,(float)(faceHeight/aboveHeight));
         } else {
-            return Filter.scaleBitmap(aboveBitmap,(float)(faceWidth/aboveWidth));
+            return Filter.scaleBitmap(face,(float)(faceWidth/aboveWidth));
         }
     }
 
 
-    private View getNewImageView(int id) {
-        View inflate = LayoutInflater.from(this).inflate(R.layout.face_card, null, false);
-        ((ImageView) inflate.findViewById(R.id.imageView_template)).setImageResource(id);
-        return inflate;
+    private final Runnable mEagerEncode = new Runnable() {
+        @Override
+        public void run() {
+            final Bitmap composite = finalBitmap;
+            if (composite == null || !mFaceHashReady) {
+                return;
+            }
+            final long key = mComposite.key(mFaceHash);
+            final ShareCache cache = ShareCache.get(TemplateActivity.this);
+            if (cache.getJpeg(key) != null) {
+                return;
+            }
+            mEagerEncodeTask = Pipeline.get().submit(TemplateActivity.this, Pipeline.Stage.ENCODE,
+                    Pipeline.PRIORITY_BACKGROUND, new PipelineTask<byte[]>() {
+                        @Override
+                        protected byte[] run() throws Exception {
+                            byte[] jpeg = GalleryExporter.encodeJpeg(composite);
+                            cache.putJpeg(key, jpeg);
+                            return jpeg;
+                        }
+                    });
+        }
+    };
+
+    /**
+     * 轮播每次停下都会调用，滑动中的中间结果不编码
+     */
+    private void scheduleEagerEncode() {
+        mShareView.removeCallbacks(mEagerEncode);
+        if (mEagerEncodeTask != null) {
+            mEagerEncodeTask.cancel();
+            mEagerEncodeTask = null;
+        }
+        mShareView.postDelayed(mEagerEncode, EAGER_ENCODE_DELAY_MS);
     }
 
-    public static Uri saveImageToGallery(Context context, Bitmap bmp) {
-        // 首先保存图片
-        File appDir = new File(Environment.getExternalStorageDirectory(), "/QAQ");
-        if (!appDir.exists()) {
-            appDir.mkdir();
+    private void shareComposite() {
+        final Bitmap composite = finalBitmap;
+        if (composite == null) {
+            return;
         }
-        String fileName = "QAQ_"+System.currentTimeMillis() + ".jpg";
-        File file = new File(appDir, fileName);
-        try {
-            FileOutputStream fos = new FileOutputStream(file);
-            bmp.compress(Bitmap.CompressFormat.JPEG, 100, fos);
-            fos.flush();
-            fos.close();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        // 其次把文件插入到系统图库
-        Uri photoUri = null;
-        try {
-            String path = MediaStore.Images.Media.insertImage(context.getContentResolver(),
-                    file.getAbsolutePath(), fileName, null);
-            Log.d("aaa", "path --->" + path);
-            photoUri = Uri.parse(path);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        }
-        // 最后通知图库更新
-        //Uri photoUri = Uri.parse("file://"+file.getAbsolutePath());
-        context.sendBroadcast(new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE, photoUri));
-        return photoUri;
+        // 脸的哈希还没算好时不查也不记缓存
+        final boolean cacheable = mFaceHashReady;
+        final long key = cacheable ? mComposite.key(mFaceHash) : 0;
+        final int template = currIndex;
+        final ShareCache cache = ShareCache.get(this);
+        mShareView.setEnabled(false);
+        Pipeline.get().submit(this, Pipeline.Stage.ENCODE, Pipeline.PRIORITY_INTERACTIVE,
+                new PipelineTask<Uri>() {
+                    private boolean mExported;
+
+                    @Override
+                    protected Uri run() throws Exception {
+                        // 同样的合成分享过就直接用图库里那一份
+                        Uri uri = cacheable ? cache.getUri(key) : null;
+                        if (uri != null) {
+                            if (GalleryExporter.exists(getContentResolver(), uri)) {
+                                return uri;
+                            }
+                            cache.removeUri(key);
+                        }
+                        byte[] jpeg = cacheable ? cache.getJpeg(key) : null;
+                        if (jpeg != null) {
+                            uri = GalleryExporter.exportJpeg(getContentResolver(), jpeg,
+                                    composite.getWidth(), composite.getHeight());
+                        } else {
+                            uri = GalleryExporter.exportJpeg(getContentResolver(), composite);
+                        }
+                        if (cacheable) {
+                            cache.putUri(key, uri);
+                        }
+                        mExported = true;
+                        return uri;
+                    }
+
+                    @Override
+                    protected void onResult(Uri uri) {
+                        mShareView.setEnabled(true);
+                        // 重复分享同一张图不重复记录
+                        if (mExported) {
+                            HistoryStore.get(TemplateActivity.this).record(template, composite, uri, mSourcePath);
+                        }
+                        Intent i = new Intent();
+                        i.setType("image/*");
+                        i.setAction(Intent.ACTION_SEND);
+                        i.putExtra(Intent.EXTRA_STREAM, uri);
+                        startActivity(Intent.createChooser(i, "Share"));
+                    }
+
+                    @Override
+                    protected void onError(Exception e) {
+                        super.onError(e);
+                        mShareView.setEnabled(true);
+                        Toast.makeText(TemplateActivity.this, "保存失败", Toast.LENGTH_SHORT).show();
+                    }
+                });
     }
 }
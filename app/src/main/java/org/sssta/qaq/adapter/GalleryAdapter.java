@@ -12,6 +12,7 @@ import android.widget.ImageView;
 
 import org.sssta.qaq.PhotoDetailActivity;
 import org.sssta.qaq.R;
+import org.sssta.qaq.thumbnail.ThumbnailLoader;
 
 import java.util.List;
 
@@ -24,6 +25,8 @@ public class GalleryAdapter extends RecyclerView.Adapter {
     private List<Integer> mIds;
     private LayoutInflater mInflater;
     private Context mContext;
+    private ThumbnailLoader mLoader;
+    private int mCellSize;
 
     public class PhotoViewHolder extends RecyclerView.ViewHolder {
 
@@ -48,6 +51,16 @@ public class GalleryAdapter extends RecyclerView.Adapter {
         mInflater = LayoutInflater.from(context);
         mContext = context;
         mIds = ids;
+        mLoader = ThumbnailLoader.get(context);
+        mCellSize = context.getResources().getDimensionPixelSize(R.dimen.photo_cell_size);
+    }
+
+    public int getCellSize() {
+        return mCellSize;
+    }
+
+    public ThumbnailLoader.Source getSource(int position) {
+        return ThumbnailLoader.Source.resource(mIds.get(position));
     }
 
     @Override
@@ -59,8 +72,13 @@ public class GalleryAdapter extends RecyclerView.Adapter {
     @Override
     public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
         PhotoViewHolder viewHolder = (PhotoViewHolder) holder;
-        viewHolder.photo.setImageResource(mIds.get(position));
+        mLoader.load(viewHolder.photo, getSource(position), mCellSize);
+    }
 
+    @Override
+    public void onViewRecycled(RecyclerView.ViewHolder holder) {
+        super.onViewRecycled(holder);
+        mLoader.cancel(((PhotoViewHolder) holder).photo);
     }
 
     @Override
@@ -69,4 +87,4 @@ public class GalleryAdapter extends RecyclerView.Adapter {
     }
 
 
-}
\ No newline at end of file
+}
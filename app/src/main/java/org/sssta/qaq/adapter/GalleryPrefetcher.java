@@ -0,0 +1,120 @@
+package org.sssta.qaq.adapter;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseArray;
+import android.view.View;
+
+import org.sssta.qaq.pipeline.Pipeline;
+import org.sssta.qaq.pipeline.PipelineTask;
+import org.sssta.qaq.thumbnail.ThumbnailLoader;
+
+/**
+ * 按滑动方向提前解码视口外的几行缩略图。
+ *
+ * 预取的行数由当前滑动速度和 {@link ThumbnailLoader#getAverageDecodeMillis()} 估算：
+ * 保证解码跟得上格子进入屏幕的速度。方向反转时之前的预取全部取消。
+ */
+public class GalleryPrefetcher extends RecyclerView.OnScrollListener {
+
+    private static final int MIN_ROWS = 1;
+    private static final int MAX_ROWS = 6;
+
+    /**
+     * 速度的平滑系数
+     */
+    private static final float VELOCITY_SMOOTHING = 0.5f;
+
+    private final GalleryAdapter mAdapter;
+    private final ThumbnailLoader mLoader;
+    private final SparseArray<PipelineTask<Bitmap>> mTasks = new SparseArray<>();
+
+    private int mDirection;
+    private long mLastScrollTime;
+    private float mVelocity;
+
+    public GalleryPrefetcher(GalleryAdapter adapter, ThumbnailLoader loader) {
+        mAdapter = adapter;
+        mLoader = loader;
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0) {
+            return;
+        }
+        int direction = dy > 0 ? 1 : -1;
+        long now = SystemClock.uptimeMillis();
+        if (direction != mDirection) {
+            cancelAll();
+            mDirection = direction;
+            mVelocity = 0;
+        } else if (now > mLastScrollTime) {
+            float velocity = Math.abs(dy) / (float) (now - mLastScrollTime);
+            mVelocity += (velocity - mVelocity) * VELOCITY_SMOOTHING;
+        }
+        mLastScrollTime = now;
+
+        GridLayoutManager layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        View child = layoutManager.getChildAt(0);
+        if (first == RecyclerView.NO_POSITION || child == null) {
+            return;
+        }
+        int span = layoutManager.getSpanCount();
+        int rows = prefetchRows(child.getHeight(), span);
+
+        int start;
+        int end;
+        if (direction > 0) {
+            start = last + 1;
+            end = Math.min(mAdapter.getItemCount(), start + rows * span);
+        } else {
+            end = first;
+            start = Math.max(0, end - rows * span);
+        }
+
+        // 已经进入屏幕或者落在窗口外的不再需要
+        for (int i = mTasks.size() - 1; i >= 0; i--) {
+            int position = mTasks.keyAt(i);
+            if (position < start || position >= end) {
+                mTasks.valueAt(i).cancel();
+                mTasks.removeAt(i);
+            }
+        }
+        for (int position = start; position < end; position++) {
+            if (mTasks.get(position) != null) {
+                continue;
+            }
+            PipelineTask<Bitmap> task = mLoader.prefetch(this, mAdapter.getSource(position),
+                    mAdapter.getCellSize());
+            if (task != null) {
+                mTasks.put(position, task);
+            }
+        }
+    }
+
+    /**
+     * 一行进入屏幕要 rowHeight / velocity 毫秒，解码一行要 span * decode / 线程数 毫秒，
+     * 解码比滑动慢多少倍就提前多少行
+     */
+    private int prefetchRows(int rowHeight, int span) {
+        if (rowHeight <= 0 || mVelocity <= 0) {
+            return MIN_ROWS;
+        }
+        float rowDecodeMillis = span * mLoader.getAverageDecodeMillis() / Pipeline.Stage.DECODE.getThreads();
+        float rowArrivalMillis = rowHeight / mVelocity;
+        int rows = (int) Math.ceil(rowDecodeMillis / rowArrivalMillis) + MIN_ROWS;
+        return Math.max(MIN_ROWS, Math.min(MAX_ROWS, rows));
+    }
+
+    public void cancelAll() {
+        for (int i = 0; i < mTasks.size(); i++) {
+            mTasks.valueAt(i).cancel();
+        }
+        mTasks.clear();
+    }
+}
@@ -0,0 +1,143 @@
+package org.sssta.qaq.adapter;
+
+import android.content.ActivityNotFoundException;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.Toast;
+
+import org.sssta.qaq.PhotoDetailActivity;
+import org.sssta.qaq.R;
+import org.sssta.qaq.pipeline.Pipeline;
+import org.sssta.qaq.pipeline.PipelineTask;
+import org.sssta.qaq.store.HistoryIndex;
+import org.sssta.qaq.store.HistoryStore;
+import org.sssta.qaq.thumbnail.ThumbnailLoader;
+import org.sssta.qaq.utils.GalleryExporter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 历史记录列表，从新到旧，数据由 {@link org.sssta.qaq.fragment.HistoryFragment} 分页追加
+ */
+public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.HistoryViewHolder> {
+
+    private final List<HistoryIndex.Entry> mEntries = new ArrayList<>();
+    private final LayoutInflater mInflater;
+    private final Context mContext;
+    private final HistoryStore mStore;
+    private final ThumbnailLoader mLoader;
+    private final int mCellSize;
+
+    public class HistoryViewHolder extends RecyclerView.ViewHolder {
+
+        public ImageView photo;
+
+        public HistoryViewHolder(View item) {
+            super(item);
+            photo = (ImageView) item.findViewById(R.id.photo);
+            item.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    int position = getAdapterPosition();
+                    if (position == RecyclerView.NO_POSITION) {
+                        return;
+                    }
+                    open(Uri.parse(mEntries.get(position).output));
+                }
+            });
+        }
+    }
+
+    /**
+     * 能拿到文件时用 {@link PhotoDetailActivity} 分块显示，拿不到再交给系统查看
+     */
+    private void open(final Uri output) {
+        Pipeline.get().submit(mContext, Pipeline.Stage.IO, Pipeline.PRIORITY_INTERACTIVE,
+                new PipelineTask<String>() {
+                    @Override
+                    protected String run() {
+                        return GalleryExporter.getPath(mContext.getContentResolver(), output);
+                    }
+
+                    @Override
+                    protected void onResult(String path) {
+                        if (path != null) {
+                            Intent intent = new Intent(mContext, PhotoDetailActivity.class);
+                            intent.putExtra("path", path);
+                            mContext.startActivity(intent);
+                            return;
+                        }
+                        Intent intent = new Intent(Intent.ACTION_VIEW);
+                        intent.setDataAndType(output, "image/*");
+                        try {
+                            mContext.startActivity(intent);
+                        } catch (ActivityNotFoundException e) {
+                            Toast.makeText(mContext, "图片已经不在了", Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
+    }
+
+    public HistoryAdapter(Context context) {
+        mInflater = LayoutInflater.from(context);
+        mContext = context;
+        mStore = HistoryStore.get(context);
+        mLoader = ThumbnailLoader.get(context);
+        mCellSize = context.getResources().getDimensionPixelSize(R.dimen.photo_cell_size);
+    }
+
+    public void append(List<HistoryIndex.Entry> entries) {
+        int start = mEntries.size();
+        // 第一页还没回来时新记录可能已经 prepend 过了，跳过重复的
+        int oldestId = start == 0 ? Integer.MAX_VALUE : mEntries.get(start - 1).id;
+        for (HistoryIndex.Entry entry : entries) {
+            if (entry.id < oldestId) {
+                mEntries.add(entry);
+            }
+        }
+        notifyItemRangeInserted(start, mEntries.size() - start);
+    }
+
+    public void prepend(HistoryIndex.Entry entry) {
+        mEntries.add(0, entry);
+        notifyItemInserted(0);
+    }
+
+    /**
+     * 最后一条的时间，用作下一页的游标
+     */
+    public long getOldestTime() {
+        return mEntries.isEmpty() ? Long.MAX_VALUE : mEntries.get(mEntries.size() - 1).time;
+    }
+
+    @Override
+    public HistoryViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        return new HistoryViewHolder(mInflater.inflate(R.layout.item_photo, parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(HistoryViewHolder holder, int position) {
+        HistoryIndex.Entry entry = mEntries.get(position);
+        String thumbnail = mStore.getThumbnail(entry.id).getPath();
+        // 缩略图在记录写进索引前生成、之后不再改，记录时间就是它的版本，不用在主线程 stat 文件
+        mLoader.load(holder.photo, ThumbnailLoader.Source.file(thumbnail, entry.time), mCellSize);
+    }
+
+    @Override
+    public void onViewRecycled(HistoryViewHolder holder) {
+        super.onViewRecycled(holder);
+        mLoader.cancel(holder.photo);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mEntries.size();
+    }
+}
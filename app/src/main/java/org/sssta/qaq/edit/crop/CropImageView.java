@@ -33,11 +33,12 @@ import android.widget.ImageView;
 
 import org.sssta.qaq.R;
 import org.sssta.qaq.utils.FaceUtils;
+import org.sssta.qaq.utils.MemoryGovernor;
 
 /**
  * Custom view that provides cropping capabilities to an image.
  */
-public class CropImageView extends FrameLayout {
+public class CropImageView extends FrameLayout implements MemoryGovernor.Client {
 
     // Private Constants ///////////////////////////////////////////////////////
 
@@ -99,6 +100,18 @@ public class CropImageView extends FrameLayout {
 
     // View Methods ////////////////////////////////////////////////////////////
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        MemoryGovernor.get(getContext()).register(this);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        MemoryGovernor.get(getContext()).unregister(this);
+    }
+
     @Override
     public Parcelable onSaveInstanceState() {
 
@@ -537,6 +550,24 @@ public class CropImageView extends FrameLayout {
     	mCropOverlayView.setCropOverlayCornerBitmap(bit);
     }
 
+    // MemoryGovernor.Client Methods ///////////////////////////////////////////
+
+    @Override
+    public long getBitmapByteCount() {
+        return mBitmap == null ? 0 : mBitmap.getByteCount();
+    }
+
+    @Override
+    public int getTrimPriority() {
+        return MemoryGovernor.PRIORITY_VISIBLE;
+    }
+
+    @Override
+    public long trimBitmaps() {
+        // 正在裁剪的原图无法重建
+        return 0;
+    }
+
     // Private Methods /////////////////////////////////////////////////////////
 
     private void init(Context context) {
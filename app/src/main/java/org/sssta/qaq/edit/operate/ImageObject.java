@@ -7,9 +7,7 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Point;
 import android.graphics.PointF;
-
-import java.util.ArrayList;
-import java.util.List;
+import android.graphics.RectF;
 
 public class ImageObject
 {
@@ -28,6 +26,20 @@ public class ImageObject
 
 	private Canvas canvas = null;
 
+	/**
+	 * 四个角的坐标，顺时针：左上 右上 右下 左下，位置、缩放、角度改变后由 {@link #updateBounds()} 更新
+	 */
+	private final float[] mQuad = new float[8];
+	private final RectF mBounds = new RectF();
+	/**
+	 * 四边形加上角上按钮的点击范围
+	 */
+	private final RectF mHitBounds = new RectF();
+	/**
+	 * 所在的容器，包围盒改变时通知它更新索引
+	 */
+	OperateView mContainer;
+
 	/**
 	 * 构造方法
 	 */
@@ -157,14 +169,56 @@ public class ImageObject
 	 */
 	public boolean contains(float pointx, float pointy)
 	{
-		Lasso lasso = null;
-		List<PointF> listPoints = new ArrayList<PointF>();
-		listPoints.add(getPointLeftTop());
-		listPoints.add(getPointRightTop());
-		listPoints.add(getPointRightBottom());
-		listPoints.add(getPointLeftBottom());
-		lasso = new Lasso(listPoints);
-		return lasso.contains(pointx, pointy);
+		if (!mBounds.contains(pointx, pointy))
+		{
+			return false;
+		}
+		return Lasso.contains(mQuad, pointx, pointy);
+	}
+
+	/**
+	 * 包含四个角按钮在内的点击范围，只读
+	 * 
+	 * @return
+	 */
+	public RectF getHitBounds()
+	{
+		return mHitBounds;
+	}
+
+	/**
+	 * 重新计算四个角和包围盒，直接改了 mPoint 之后要调用
+	 */
+	protected void updateBounds()
+	{
+		setQuadPoint(0, centerRotation - 180);
+		setQuadPoint(2, -centerRotation);
+		setQuadPoint(4, centerRotation);
+		setQuadPoint(6, -centerRotation + 180);
+		mBounds.set(mQuad[0], mQuad[1], mQuad[0], mQuad[1]);
+		for (int i = 2; i < mQuad.length; i += 2)
+		{
+			mBounds.union(mQuad[i], mQuad[i + 1]);
+		}
+		// 按钮画在角上，点击范围见 pointOnCorner
+		float slop = resizeBoxSize;
+		if (rotateBm != null)
+		{
+			slop += Math.max(rotateBm.getWidth(), rotateBm.getHeight()) / 2f;
+		}
+		mHitBounds.set(mBounds.left - slop, mBounds.top - slop,
+				mBounds.right + slop, mBounds.bottom + slop);
+		if (mContainer != null)
+		{
+			mContainer.onBoundsChanged(this);
+		}
+	}
+
+	private void setQuadPoint(int index, float rotation)
+	{
+		double rot = (mRotation + rotation) * Math.PI / 180;
+		mQuad[index] = getPoint().x + (float) (R * Math.cos(rot));
+		mQuad[index + 1] = getPoint().y + (float) (R * Math.sin(rot));
 	}
 
 	/**
@@ -286,18 +340,19 @@ public class ImageObject
 	 */
 	public boolean pointOnCorner(float x, float y, int type)
 	{
-		PointF point = null;
-		float delX = 0;
-		float delY = 0;
+		int index;
 		if (OperateConstants.LEFTTOP == type)
 		{
-			point = getPointLeftTop();
+			index = 0;
 		} else if (OperateConstants.RIGHTBOTTOM == type)
 		{
-			point = getPointRightBottom();
+			index = 4;
+		} else
+		{
+			return false;
 		}
-		delX = x - (point.x + rotateBm.getWidth() / 2);
-		delY = y - (point.y + rotateBm.getHeight() / 2);
+		float delX = x - (mQuad[index] + rotateBm.getWidth() / 2);
+		float delY = y - (mQuad[index + 1] + rotateBm.getHeight() / 2);
 		float diff = (float) Math.sqrt((delX * delX + delY * delY));
 		// float del = rotateBm.getWidth() / 2;
 		if (Math.abs(diff) <= resizeBoxSize)
@@ -319,6 +374,7 @@ public class ImageObject
 		double delY = getHeight() * mScale / 2;
 		R = (float) Math.sqrt((delX * delX + delY * delY));
 		centerRotation = (float) Math.toDegrees(Math.atan(delY / delX));
+		updateBounds();
 	}
 
 	/**
@@ -444,6 +500,7 @@ public class ImageObject
 	public void setPosition(Point Position)
 	{
 		this.mPoint = Position;
+		updateBounds();
 	}
 
 	public Point getPoint()
@@ -459,6 +516,7 @@ public class ImageObject
 	public void setRotation(float Rotation)
 	{
 		this.mRotation = Rotation;
+		updateBounds();
 	}
 
 	public float getScale()
@@ -63,4 +63,31 @@ public class Lasso
 		}
 		return result;
 	}
+
+	/**
+	 * 和 {@link #contains(float, float)} 相同，顶点的 x、y 交替存放，不分配内存
+	 * 
+	 * @param points
+	 *            x0, y0, x1, y1, ...
+	 */
+	public static boolean contains(float[] points, float x, float y)
+	{
+		boolean result = false;
+		int size = points.length;
+		for (int i = 0, j = size - 2; i < size; j = i, i += 2)
+		{
+			float xi = points[i];
+			float yi = points[i + 1];
+			float xj = points[j];
+			float yj = points[j + 1];
+			if ((yi < y && yj >= y) || (yj < y && yi >= y))
+			{
+				if (xi + (y - yi) / (yj - yi) * (xj - xi) < x)
+				{
+					result = !result;
+				}
+			}
+		}
+		return result;
+	}
 }
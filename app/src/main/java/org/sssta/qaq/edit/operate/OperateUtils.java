@@ -90,7 +90,20 @@ public class OperateUtils
 	 */
 	public Bitmap compressionFiller(Bitmap bitmap, View contentView)
 	{
-		int layoutHeight = contentView.getHeight();
+		return compressionFiller(bitmap, contentView.getHeight());
+	}
+
+	/**
+	 * 同上，view 的高度由调用方在主线程取好，可以在后台线程缩放
+	 * 
+	 * @param bitmap
+	 *            压缩图片
+	 * @param layoutHeight
+	 *            适应的高度
+	 * @return 压缩后的图片
+	 */
+	public Bitmap compressionFiller(Bitmap bitmap, int layoutHeight)
+	{
 		float scale = 0f;
 		int bitmapHeight = bitmap.getHeight();
 		int bitmapWidth = bitmap.getWidth();
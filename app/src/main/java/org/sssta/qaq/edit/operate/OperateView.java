@@ -6,15 +6,51 @@ import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Point;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.view.MotionEvent;
 import android.view.View;
 
+import org.sssta.qaq.widget.EditHistory;
+
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * 水印图片和文字的编辑容器，移动、缩放旋转、层级、删除和改字都记在 {@link EditHistory} 里，可以撤销
+ */
 public class OperateView extends View
 {
+	/**
+	 * 点击索引的格子边长，和水印的常见大小相当
+	 */
+	private static final int GRID_CELL_SIZE = 128;
+
 	private List<ImageObject> imgLists = new ArrayList<ImageObject>();
+	/**
+	 * imgLists 里对象点击范围的索引，层级和 imgLists 的顺序一致
+	 */
+	private SpatialGrid<ImageObject> mGrid;
+	private final SpatialGrid.HitTester<ImageObject> mHitTester = new SpatialGrid.HitTester<ImageObject>()
+	{
+		@Override
+		public boolean hit(ImageObject io, float x, float y)
+		{
+			return io.contains(x, y)
+					|| io.pointOnCorner(x, y, OperateConstants.RIGHTBOTTOM)
+					|| io.pointOnCorner(x, y, OperateConstants.LEFTTOP);
+		}
+	};
+	/**
+	 * 加过的所有对象，下标就是撤销记录里的 id
+	 */
+	private List<ImageObject> mObjects = new ArrayList<ImageObject>();
+	private EditHistory mHistory = new EditHistory(new HistoryTarget());
+	/**
+	 * 手势开始时选中对象的位置、缩放和角度
+	 */
+	private ImageObject mGestureObject;
+	private int mGestureX, mGestureY;
+	private float mGestureScale, mGestureRotation;
 	private Rect mCanvasLimits;
 	private Bitmap bgBmp;
 	private Paint paint = new Paint();
@@ -47,6 +83,8 @@ public class OperateView extends View
 		int width = bgBmp.getWidth();
 		int height = bgBmp.getHeight();
 		mCanvasLimits = new Rect(0, 0, width, height);
+		mGrid = new SpatialGrid<ImageObject>(0, 0, width, height,
+				GRID_CELL_SIZE);
 	}
 
 	/**
@@ -63,8 +101,15 @@ public class OperateView extends View
 		}
 		if (!isMultiAdd && imgLists != null)
 		{
+			for (ImageObject removed : imgLists)
+			{
+				removed.mContainer = null;
+				mHistory.record(EditHistory.OP_REMOVE, idOf(removed));
+			}
 			imgLists.clear();
+			mGrid.clear();
 		}
+		imgObj.mContainer = this;
 		imgObj.setSelected(true);
 		if (!imgObj.isTextObject)
 		{
@@ -77,8 +122,155 @@ public class OperateView extends View
 			tempImgObj.setSelected(false);
 		}
 		imgLists.add(imgObj);
+		onBoundsChanged(imgObj);
+		mGrid.bringToFront(imgObj);
+		Point p = imgObj.getPosition();
+		mHistory.record(EditHistory.OP_ADD, idOf(imgObj), p.x, p.y,
+				imgObj.getScale(), imgObj.getRotation(), 0, 0);
+		invalidate();
+	}
+
+	/**
+	 * 修改文字对象的内容并记录，供双击弹出的编辑框调用
+	 */
+	public void setText(TextObject textObj, String text)
+	{
+		textObj.setText(text);
+		textObj.commit();
+		mHistory.recordText(idOf(textObj), text);
 		invalidate();
 	}
+
+	public boolean canUndo()
+	{
+		return mHistory.canUndo();
+	}
+
+	public boolean canRedo()
+	{
+		return mHistory.canRedo();
+	}
+
+	public boolean undo()
+	{
+		if (!mHistory.undo())
+		{
+			return false;
+		}
+		onHistoryMoved();
+		return true;
+	}
+
+	public boolean redo()
+	{
+		if (!mHistory.redo())
+		{
+			return false;
+		}
+		onHistoryMoved();
+		return true;
+	}
+
+	private int idOf(ImageObject obj)
+	{
+		int id = mObjects.indexOf(obj);
+		if (id < 0)
+		{
+			id = mObjects.size();
+			mObjects.add(obj);
+		}
+		return id;
+	}
+
+	/**
+	 * 撤销或重做之后按 imgLists 重建点击索引，只保留一个选中的对象
+	 */
+	private void onHistoryMoved()
+	{
+		mMovedSinceDown = false;
+		mResizeAndRotateSinceDown = false;
+		mGestureObject = null;
+		mGrid.clear();
+		ImageObject selected = null;
+		for (ImageObject obj : mObjects)
+		{
+			if (obj.isSelected() && imgLists.contains(obj))
+			{
+				selected = obj;
+			}
+			obj.setSelected(false);
+			obj.mContainer = null;
+		}
+		for (ImageObject obj : imgLists)
+		{
+			// 按从下到上的顺序放回去，后放的在上层
+			obj.mContainer = this;
+			onBoundsChanged(obj);
+		}
+		if (selected != null)
+		{
+			selected.setSelected(true);
+		}
+		invalidate();
+	}
+
+	/**
+	 * 移到最上层，层级变了才记录
+	 */
+	private void bringToTop(ImageObject obj)
+	{
+		int index = imgLists.indexOf(obj);
+		imgLists.remove(index);
+		imgLists.add(obj);
+		mGrid.bringToFront(obj);
+		if (index != imgLists.size() - 1)
+		{
+			mHistory.record(EditHistory.OP_REORDER, idOf(obj), imgLists.size() - 1, 0, 0, 0, 0, 0);
+		}
+	}
+
+	private void startGesture(ImageObject obj)
+	{
+		if (obj == null || mGestureObject != null)
+		{
+			return;
+		}
+		mGestureObject = obj;
+		mGestureX = obj.getPosition().x;
+		mGestureY = obj.getPosition().y;
+		mGestureScale = obj.getScale();
+		mGestureRotation = obj.getRotation();
+	}
+
+	/**
+	 * 手势结束时记一条增量：位移、缩放倍数、旋转角度
+	 */
+	private void recordGesture()
+	{
+		ImageObject obj = mGestureObject;
+		mGestureObject = null;
+		if (obj == null || !imgLists.contains(obj))
+		{
+			return;
+		}
+		int dx = obj.getPosition().x - mGestureX;
+		int dy = obj.getPosition().y - mGestureY;
+		float ratio = obj.getScale() / mGestureScale;
+		float dRotation = obj.getRotation() - mGestureRotation;
+		if (dx != 0 || dy != 0 || ratio != 1f || dRotation != 0)
+		{
+			mHistory.record(EditHistory.OP_TRANSFORM, idOf(obj), dx, dy, ratio, dRotation, 0, 0);
+		}
+	}
+
+	/**
+	 * 对象移动、缩放、旋转或改字后由 {@link ImageObject#updateBounds()} 调用
+	 */
+	void onBoundsChanged(ImageObject imgObj)
+	{
+		RectF bounds = imgObj.getHitBounds();
+		mGrid.put(imgObj, bounds.left, bounds.top, bounds.right, bounds.bottom);
+	}
 	/**
 	 * 画出容器内所有的图像
 	 */
@@ -171,6 +363,7 @@ public class OperateView extends View
 					{
 						mStartScale = io.getScale();
 						mStartRot = io.getRotation();
+						startGesture(io);
 						break;
 					}
 				}
@@ -243,53 +436,26 @@ public class OperateView extends View
 				mResizeAndRotateSinceDown = false;
 				int selectedId = -1;
 
-				for (int i = imgLists.size() - 1; i >= 0; --i)
+				// 只检查触点所在格子里的对象，先比包围盒再判断四边形和角上的按钮
+				ImageObject hit = mGrid.hitTest(event.getX(), event.getY(),
+						mHitTester);
+				if (hit != null)
 				{
-					ImageObject io = imgLists.get(i);
-					if (io.contains(event.getX(), event.getY())
-							|| io.pointOnCorner(event.getX(), event.getY(),
-									OperateConstants.RIGHTBOTTOM)
-							|| io.pointOnCorner(event.getX(), event.getY(),
-									OperateConstants.LEFTTOP))
+					hit.setSelected(true);
+					bringToTop(hit);
+					selectedId = imgLists.size() - 1;
+					currentTime = System.currentTimeMillis();
+					if (currentTime - selectTime < 300)
 					{
-						io.setSelected(true);
-						imgLists.remove(i);
-						imgLists.add(io);
-						selectedId = imgLists.size() - 1;
-						currentTime = System.currentTimeMillis();
-						if (currentTime - selectTime < 300)
+						if (myListener != null)
 						{
-							if (myListener != null)
+							if (hit.isTextObject())
 							{
-								if (getSelected().isTextObject())
-								{
-									myListener
-											.onClick((TextObject) getSelected());
-								}
+								myListener.onClick((TextObject) hit);
 							}
 						}
-						selectTime = currentTime;
-						break;
-					}
-				}
-				if (selectedId < 0)
-				{
-					for (int i = imgLists.size() - 1; i >= 0; --i)
-					{
-						ImageObject io = imgLists.get(i);
-						if (io.contains(event.getX(), event.getY())
-								|| io.pointOnCorner(event.getX(), event.getY(),
-										OperateConstants.RIGHTBOTTOM)
-								|| io.pointOnCorner(event.getX(), event.getY(),
-										OperateConstants.LEFTTOP))
-						{
-							io.setSelected(true);
-							imgLists.remove(i);
-							imgLists.add(io);
-							selectedId = imgLists.size() - 1;
-							break;
-						}
 					}
+					selectTime = currentTime;
 				}
 				for (int i = 0; i < imgLists.size(); ++i)
 				{
@@ -307,6 +473,9 @@ public class OperateView extends View
 							OperateConstants.LEFTTOP))
 					{
 						imgLists.remove(io);
+						io.mContainer = null;
+						mGrid.remove(io);
+						mHistory.record(EditHistory.OP_REMOVE, idOf(io));
 					} else if (io.pointOnCorner(event.getX(), event.getY(),
 							OperateConstants.RIGHTBOTTOM))
 					{
@@ -321,11 +490,13 @@ public class OperateView extends View
 								.atan2(delX, delY));
 						mStartScale = io.getScale();
 						mStartRot = io.getRotation();
+						startGesture(io);
 					} else if (io.contains(event.getX(), event.getY()))
 					{
 						mMovedSinceDown = true;
 						mPreviousPos.x = (int) event.getX();
 						mPreviousPos.y = (int) event.getY();
+						startGesture(io);
 					}
 				}
 				break;
@@ -334,6 +505,7 @@ public class OperateView extends View
 
 				mMovedSinceDown = false;
 				mResizeAndRotateSinceDown = false;
+				recordGesture();
 
 				break;
 
@@ -420,4 +592,99 @@ public class OperateView extends View
 	{
 		public void onClick(TextObject tObject);
 	}
+
+	/**
+	 * 检查点：从下到上每个对象的 id、位置、缩放、角度和文字
+	 */
+	private static class ObjectsState
+	{
+		final int[] ids;
+		final float[] transforms;
+		final String[] texts;
+
+		ObjectsState(int count)
+		{
+			ids = new int[count];
+			transforms = new float[count * 4];
+			texts = new String[count];
+		}
+	}
+
+	/**
+	 * 重放时只改对象和 imgLists，点击索引在 {@link #onHistoryMoved()} 里一次重建
+	 */
+	private class HistoryTarget implements EditHistory.Target
+	{
+		@Override
+		public Object saveState()
+		{
+			ObjectsState state = new ObjectsState(imgLists.size());
+			for (int i = 0; i < imgLists.size(); i++)
+			{
+				ImageObject obj = imgLists.get(i);
+				state.ids[i] = idOf(obj);
+				state.transforms[i * 4] = obj.getPosition().x;
+				state.transforms[i * 4 + 1] = obj.getPosition().y;
+				state.transforms[i * 4 + 2] = obj.getScale();
+				state.transforms[i * 4 + 3] = obj.getRotation();
+				if (obj instanceof TextObject)
+				{
+					state.texts[i] = ((TextObject) obj).getText();
+				}
+			}
+			return state;
+		}
+
+		@Override
+		public void restoreState(Object saved)
+		{
+			ObjectsState state = (ObjectsState) saved;
+			imgLists.clear();
+			for (int i = 0; i < state.ids.length; i++)
+			{
+				ImageObject obj = mObjects.get(state.ids[i]);
+				if (obj instanceof TextObject && state.texts[i] != null
+						&& !state.texts[i].equals(((TextObject) obj).getText()))
+				{
+					((TextObject) obj).setText(state.texts[i]);
+					((TextObject) obj).commit();
+				}
+				obj.getPosition().set((int) state.transforms[i * 4], (int) state.transforms[i * 4 + 1]);
+				obj.setScale(state.transforms[i * 4 + 2]);
+				obj.setRotation(state.transforms[i * 4 + 3]);
+				imgLists.add(obj);
+			}
+		}
+
+		@Override
+		public void apply(byte op, int id, float[] args, int offset, String text)
+		{
+			ImageObject obj = mObjects.get(id);
+			switch (op)
+			{
+				case EditHistory.OP_TRANSFORM :
+					obj.moveBy((int) args[offset], (int) args[offset + 1]);
+					obj.setScale(obj.getScale() * args[offset + 2]);
+					obj.setRotation(obj.getRotation() + args[offset + 3]);
+					break;
+				case EditHistory.OP_ADD :
+					obj.getPosition().set((int) args[offset], (int) args[offset + 1]);
+					obj.setScale(args[offset + 2]);
+					obj.setRotation(args[offset + 3]);
+					imgLists.add(obj);
+					break;
+				case EditHistory.OP_REMOVE :
+					imgLists.remove(obj);
+					break;
+				case EditHistory.OP_REORDER :
+					imgLists.remove(obj);
+					imgLists.add((int) args[offset], obj);
+					break;
+				case EditHistory.OP_TEXT :
+					((TextObject) obj).setText(text);
+					((TextObject) obj).commit();
+					break;
+			}
+		}
+	}
 }
@@ -0,0 +1,201 @@
+package org.sssta.qaq.edit.operate;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * 按包围盒把对象放进均匀网格，点击时只检查触点所在格子里的对象
+ *
+ * 对象移动、缩放、旋转后用 {@link #put} 更新，包围盒仍落在原来的格子里时不做任何改动；
+ * 超出网格范围的部分归到边上的格子，查询时同样截到边上，不会漏掉
+ */
+public class SpatialGrid<T>
+{
+	/**
+	 * 包围盒初筛之后的精确判断，比如旋转后的四边形和角上的按钮
+	 */
+	public interface HitTester<T>
+	{
+		boolean hit(T item, float x, float y);
+	}
+
+	private static class Entry<T>
+	{
+		final T item;
+		float left, top, right, bottom;
+		int cellLeft, cellTop, cellRight, cellBottom;
+		/**
+		 * 层级，越大越靠上
+		 */
+		long order;
+
+		Entry(T item)
+		{
+			this.item = item;
+		}
+	}
+
+	private final float mLeft;
+	private final float mTop;
+	private final float mCellSize;
+	private final int mColumns;
+	private final int mRows;
+	private final ArrayList<Entry<T>>[] mCells;
+	private final IdentityHashMap<T, Entry<T>> mEntries = new IdentityHashMap<T, Entry<T>>();
+	private long mNextOrder;
+
+	/**
+	 * @param cellSize
+	 *            格子边长，取对象常见大小左右，每个格子里的对象数最少
+	 */
+	@SuppressWarnings("unchecked")
+	public SpatialGrid(float left, float top, float right, float bottom,
+			float cellSize)
+	{
+		mLeft = left;
+		mTop = top;
+		mCellSize = cellSize;
+		mColumns = Math.max(1, (int) Math.ceil((right - left) / cellSize));
+		mRows = Math.max(1, (int) Math.ceil((bottom - top) / cellSize));
+		mCells = new ArrayList[mColumns * mRows];
+		for (int i = 0; i < mCells.length; i++)
+		{
+			mCells[i] = new ArrayList<Entry<T>>(4);
+		}
+	}
+
+	/**
+	 * 加入对象或更新它的包围盒，新加入的对象在最上层
+	 */
+	public void put(T item, float left, float top, float right, float bottom)
+	{
+		Entry<T> entry = mEntries.get(item);
+		if (entry == null)
+		{
+			entry = new Entry<T>(item);
+			entry.order = ++mNextOrder;
+			mEntries.put(item, entry);
+		} else
+		{
+			int cellLeft = column(left);
+			int cellTop = row(top);
+			int cellRight = column(right);
+			int cellBottom = row(bottom);
+			if (cellLeft == entry.cellLeft && cellTop == entry.cellTop
+					&& cellRight == entry.cellRight
+					&& cellBottom == entry.cellBottom)
+			{
+				setBounds(entry, left, top, right, bottom);
+				return;
+			}
+			unlink(entry);
+		}
+		setBounds(entry, left, top, right, bottom);
+		entry.cellLeft = column(left);
+		entry.cellTop = row(top);
+		entry.cellRight = column(right);
+		entry.cellBottom = row(bottom);
+		for (int r = entry.cellTop; r <= entry.cellBottom; r++)
+		{
+			for (int c = entry.cellLeft; c <= entry.cellRight; c++)
+			{
+				mCells[r * mColumns + c].add(entry);
+			}
+		}
+	}
+
+	public void remove(T item)
+	{
+		Entry<T> entry = mEntries.remove(item);
+		if (entry != null)
+		{
+			unlink(entry);
+		}
+	}
+
+	public void clear()
+	{
+		for (ArrayList<Entry<T>> cell : mCells)
+		{
+			cell.clear();
+		}
+		mEntries.clear();
+	}
+
+	public int size()
+	{
+		return mEntries.size();
+	}
+
+	/**
+	 * 移到最上层，要和容器里的绘制顺序保持一致
+	 */
+	public void bringToFront(T item)
+	{
+		Entry<T> entry = mEntries.get(item);
+		if (entry != null)
+		{
+			entry.order = ++mNextOrder;
+		}
+	}
+
+	/**
+	 * 找到包含触点的最上层对象，不分配内存
+	 *
+	 * @param tester
+	 *            包围盒包含触点后再调用，为 null 时只看包围盒
+	 * @return 没有时返回 null
+	 */
+	public T hitTest(float x, float y, HitTester<T> tester)
+	{
+		ArrayList<Entry<T>> cell = mCells[row(y) * mColumns + column(x)];
+		Entry<T> best = null;
+		for (int i = 0, size = cell.size(); i < size; i++)
+		{
+			Entry<T> entry = cell.get(i);
+			if ((best == null || entry.order > best.order)
+					&& x >= entry.left && x <= entry.right
+					&& y >= entry.top && y <= entry.bottom
+					&& (tester == null || tester.hit(entry.item, x, y)))
+			{
+				best = entry;
+			}
+		}
+		return best == null ? null : best.item;
+	}
+
+	private static <T> void setBounds(Entry<T> entry, float left, float top,
+			float right, float bottom)
+	{
+		entry.left = left;
+		entry.top = top;
+		entry.right = right;
+		entry.bottom = bottom;
+	}
+
+	private void unlink(Entry<T> entry)
+	{
+		for (int r = entry.cellTop; r <= entry.cellBottom; r++)
+		{
+			for (int c = entry.cellLeft; c <= entry.cellRight; c++)
+			{
+				mCells[r * mColumns + c].remove(entry);
+			}
+		}
+	}
+
+	private int column(float x)
+	{
+		return clamp((int) Math.floor((x - mLeft) / mCellSize), mColumns);
+	}
+
+	private int row(float y)
+	{
+		return clamp((int) Math.floor((y - mTop) / mCellSize), mRows);
+	}
+
+	private static int clamp(int index, int count)
+	{
+		return index < 0 ? 0 : index >= count ? count - 1 : index;
+	}
+}
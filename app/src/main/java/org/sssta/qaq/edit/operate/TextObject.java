@@ -185,6 +185,7 @@ public class TextObject extends ImageObject
 	public void setX(int x)
 	{
 		this.mPoint.x = x;
+		updateBounds();
 	}
 
 	public int getY()
@@ -195,6 +196,7 @@ public class TextObject extends ImageObject
 	public void setY(int y)
 	{
 		this.mPoint.y = y;
+		updateBounds();
 	}
 
 	public String getText()
@@ -10,6 +10,7 @@ import android.view.ViewGroup;
 
 import org.sssta.qaq.R;
 import org.sssta.qaq.adapter.GalleryAdapter;
+import org.sssta.qaq.store.FavoritesStore;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -17,11 +18,12 @@ import java.util.List;
 /**
  * Created by cauchywei on 15/11/22.
  */
-public class CollectionFragment extends BasePageFragment {
+public class CollectionFragment extends BasePageFragment implements FavoritesStore.OnChangeListener {
 
     private RecyclerView recyclerView;
     private GalleryAdapter mAdapter;
     private List<Integer> ids = new ArrayList<>();
+    private FavoritesStore mStore;
 
     @Override
     public String getTitle() {
@@ -40,12 +42,12 @@ public class CollectionFragment extends BasePageFragment {
         recyclerView.setLayoutManager(layoutManager);
 
 
-        ids.add(R.drawable.exp2);
-        ids.add(R.drawable.exp6);
-        ids.add(R.drawable.exp8);
-        ids.add(R.drawable.exp12);
-        ids.add(R.drawable.exp14);
-        ids.add(R.drawable.exp17);
+        mStore = FavoritesStore.get(getContext());
+        ids.clear();
+        if (mStore.isLoaded()) {
+            ids.addAll(mStore.getResourceIds());
+        }
+        mStore.addListener(this);
 
 
         mAdapter = new GalleryAdapter(getContext(),ids);
@@ -53,4 +55,17 @@ public class CollectionFragment extends BasePageFragment {
 
         return rootView;
     }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mStore.removeListener(this);
+    }
+
+    @Override
+    public void onFavoritesChanged(FavoritesStore store) {
+        ids.clear();
+        ids.addAll(store.getResourceIds());
+        mAdapter.notifyDataSetChanged();
+    }
 }
@@ -10,6 +10,8 @@ import android.view.ViewGroup;
 
 import org.sssta.qaq.R;
 import org.sssta.qaq.adapter.GalleryAdapter;
+import org.sssta.qaq.adapter.GalleryPrefetcher;
+import org.sssta.qaq.thumbnail.ThumbnailLoader;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -21,6 +23,7 @@ public class GalleryFragment extends BasePageFragment {
 
     private RecyclerView recyclerView;
     private GalleryAdapter mAdapter;
+    private GalleryPrefetcher mPrefetcher;
     private List<Integer> ids = new ArrayList<>();
 
     @Override
@@ -63,6 +66,15 @@ public class GalleryFragment extends BasePageFragment {
         mAdapter = new GalleryAdapter(getContext(),ids);
         recyclerView.setAdapter(mAdapter);
 
+        mPrefetcher = new GalleryPrefetcher(mAdapter, ThumbnailLoader.get(getContext()));
+        recyclerView.addOnScrollListener(mPrefetcher);
+
         return rootView;
     }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mPrefetcher.cancelAll();
+    }
 }
@@ -0,0 +1,98 @@
+package org.sssta.qaq.fragment;
+
+import android.os.Bundle;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.sssta.qaq.R;
+import org.sssta.qaq.adapter.HistoryAdapter;
+import org.sssta.qaq.pipeline.Pipeline;
+import org.sssta.qaq.store.HistoryIndex;
+import org.sssta.qaq.store.HistoryStore;
+
+import java.util.List;
+
+/**
+ * 生成历史，滑到接近底部时再加载下一页
+ */
+public class HistoryFragment extends BasePageFragment implements HistoryStore.OnChangeListener {
+
+    private static final int PAGE_SIZE = 60;
+    /**
+     * 离底部还剩这么多个时开始加载下一页
+     */
+    private static final int LOAD_AHEAD = PAGE_SIZE / 2;
+
+    private RecyclerView recyclerView;
+    private HistoryAdapter mAdapter;
+    private HistoryStore mStore;
+    private boolean mLoading;
+    private boolean mExhausted;
+
+    @Override
+    public String getTitle() {
+        return "历史";
+    }
+
+    @Nullable
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        View rootView = inflater.inflate(R.layout.fragment_hot_photo, container, false);
+
+        recyclerView = (RecyclerView) rootView.findViewById(R.id.recyclerView_hot_photo);
+
+        final GridLayoutManager layoutManager = new GridLayoutManager(getContext(), 3);
+        recyclerView.setLayoutManager(layoutManager);
+
+        mStore = HistoryStore.get(getContext());
+        mAdapter = new HistoryAdapter(getContext());
+        recyclerView.setAdapter(mAdapter);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (layoutManager.findLastVisibleItemPosition() >= mAdapter.getItemCount() - LOAD_AHEAD) {
+                    loadNextPage();
+                }
+            }
+        });
+
+        mLoading = false;
+        mExhausted = false;
+        mStore.addListener(this);
+        loadNextPage();
+
+        return rootView;
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mStore.removeListener(this);
+        Pipeline.get().cancelAll(this);
+    }
+
+    private void loadNextPage() {
+        if (mLoading || mExhausted) {
+            return;
+        }
+        mLoading = true;
+        mStore.query(this, HistoryIndex.ANY_TEMPLATE, mAdapter.getOldestTime(), PAGE_SIZE,
+                new HistoryStore.Callback() {
+                    @Override
+                    public void onPage(List<HistoryIndex.Entry> entries) {
+                        mLoading = false;
+                        mExhausted = entries.size() < PAGE_SIZE;
+                        mAdapter.append(entries);
+                    }
+                });
+    }
+
+    @Override
+    public void onHistoryAdded(HistoryIndex.Entry entry) {
+        mAdapter.prepend(entry);
+    }
+}
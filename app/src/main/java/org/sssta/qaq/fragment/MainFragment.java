@@ -16,6 +16,7 @@ import org.sssta.qaq.FaceDetectorActivity;
 import org.sssta.qaq.R;
 import org.sssta.qaq.edit.operate.OperateUtils;
 import org.sssta.qaq.edit.utils.FileUtils;
+import org.sssta.qaq.pipeline.FacePrefetch;
 
 import java.io.File;
 import java.io.IOException;
@@ -126,6 +127,8 @@ public class MainFragment extends BasePageFragment {
         }
 
         if (PHOTO_FROM_CAMERA == requestCode || PHOTO_FROM_GALLERY == requestCode) {
+            // 解码和检测与界面切换同时进行，FaceDetectorActivity 布局好后直接取结果
+            FacePrefetch.start(getContext(), photoPath);
             Intent intent = new Intent(getContext(), FaceDetectorActivity.class);
             intent.putExtra("path",photoPath);
             startActivity(intent);
@@ -0,0 +1,198 @@
+package org.sssta.qaq.pipeline;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+import android.util.DisplayMetrics;
+
+import org.sssta.qaq.trace.StageTracer;
+import org.sssta.qaq.utils.FaceUtils;
+
+/**
+ * 选好照片后立刻开始解码和人脸检测，不用等裁剪界面启动、布局完成。
+ *
+ * 解码出的是不小于屏幕的代理图，裁剪界面拿到后再缩放到自己的尺寸，
+ * 检测到的取景框按同样的比例换算。同一时间只保留一张照片的结果，所有方法都在主线程调用。
+ */
+public class FacePrefetch {
+
+    public interface Callback {
+        /**
+         * 代理图解码完成，之后归调用方所有。
+         * 检测任务还在读它，要等 {@link #onFaceDetected} 之后才能回收
+         */
+        void onProxyDecoded(Bitmap proxy);
+
+        /**
+         * @param faceRect 代理图坐标系下的取景框，没有检测到脸时为 null
+         */
+        void onFaceDetected(Rect faceRect);
+
+        void onFailed(Exception e);
+    }
+
+    private static Entry sEntry;
+
+    private static class Entry {
+        final String path;
+        Bitmap proxy;
+        Rect faceRect;
+        boolean detected;
+        Exception error;
+        Callback callback;
+        boolean proxyDelivered;
+
+        Entry(String path) {
+            this.path = path;
+        }
+    }
+
+    /**
+     * 开始处理 path，之前未取走的结果直接丢弃
+     */
+    public static void start(Context context, String path) {
+        if (sEntry != null && sEntry.path.equals(path)) {
+            return;
+        }
+        discard();
+
+        final Entry entry = new Entry(path);
+        sEntry = entry;
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        final int targetSize = Math.max(metrics.widthPixels, metrics.heightPixels);
+
+        Pipeline.get().submit(entry, Pipeline.Stage.DECODE, Pipeline.PRIORITY_INTERACTIVE,
+                new PipelineTask<Bitmap>() {
+                    @Override
+                    protected Bitmap run() {
+                        StageTracer.Span span = StageTracer.begin(StageTracer.DECODE);
+                        try {
+                            return decodeProxy(entry.path, targetSize);
+                        } finally {
+                            span.end();
+                        }
+                    }
+
+                    @Override
+                    protected void onResult(Bitmap proxy) {
+                        if (proxy == null) {
+                            fail(entry, new IllegalArgumentException("cannot decode " + entry.path));
+                            return;
+                        }
+                        entry.proxy = proxy;
+                        detect(entry);
+                        dispatch(entry);
+                    }
+
+                    @Override
+                    protected void onError(Exception e) {
+                        fail(entry, e);
+                    }
+                });
+    }
+
+    /**
+     * 取 path 的结果，已经完成的步骤立即回调；没有预取过时现在开始
+     */
+    public static void take(Context context, String path, Callback callback) {
+        start(context, path);
+        sEntry.callback = callback;
+        dispatch(sEntry);
+    }
+
+    /**
+     * 调用方不再需要结果时调用，未完成的任务一起取消
+     */
+    public static void cancel(Callback callback) {
+        if (sEntry != null && sEntry.callback == callback) {
+            discard();
+        }
+    }
+
+    private static void detect(final Entry entry) {
+        final Bitmap proxy = entry.proxy;
+        Pipeline.get().submit(entry, Pipeline.Stage.DETECT, Pipeline.PRIORITY_INTERACTIVE,
+                new PipelineTask<Rect>() {
+                    @Override
+                    protected Rect run() {
+                        StageTracer.Span span = StageTracer.begin(StageTracer.DETECT);
+                        try {
+                            return FaceUtils.findFaceRect(proxy);
+                        } finally {
+                            span.end();
+                        }
+                    }
+
+                    @Override
+                    protected void onResult(Rect faceRect) {
+                        entry.faceRect = faceRect;
+                        entry.detected = true;
+                        dispatch(entry);
+                    }
+
+                    @Override
+                    protected void onError(Exception e) {
+                        // 检测失败按没有脸处理，用户可以手动拖选框
+                        super.onError(e);
+                        entry.detected = true;
+                        dispatch(entry);
+                    }
+                });
+    }
+
+    private static void fail(Entry entry, Exception e) {
+        entry.error = e;
+        dispatch(entry);
+    }
+
+    private static void dispatch(Entry entry) {
+        Callback callback = entry.callback;
+        if (callback == null || entry != sEntry) {
+            return;
+        }
+        if (entry.error != null) {
+            sEntry = null;
+            callback.onFailed(entry.error);
+            return;
+        }
+        if (entry.proxy != null && !entry.proxyDelivered) {
+            entry.proxyDelivered = true;
+            callback.onProxyDecoded(entry.proxy);
+        }
+        if (entry.detected) {
+            sEntry = null;
+            callback.onFaceDetected(entry.faceRect);
+        }
+    }
+
+    private static void discard() {
+        if (sEntry == null) {
+            return;
+        }
+        Pipeline.get().cancelAll(sEntry);
+        // 检测任务可能还在读代理图，没检测完时交给 GC
+        if (sEntry.proxy != null && !sEntry.proxyDelivered && sEntry.detected) {
+            sEntry.proxy.recycle();
+        }
+        sEntry = null;
+    }
+
+    /**
+     * 按 2 的幂降采样，长边不小于 targetSize，FaceDetector 只接受 RGB_565
+     */
+    static Bitmap decodeProxy(String path, int targetSize) {
+        BitmapFactory.Options opt = new BitmapFactory.Options();
+        opt.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, opt);
+        int longSide = Math.max(opt.outWidth, opt.outHeight);
+        int sampleSize = 1;
+        while (longSide / (sampleSize * 2) >= targetSize) {
+            sampleSize *= 2;
+        }
+        opt.inJustDecodeBounds = false;
+        opt.inSampleSize = sampleSize;
+        opt.inPreferredConfig = Bitmap.Config.RGB_565;
+        return BitmapFactory.decodeFile(path, opt);
+    }
+}
@@ -0,0 +1,210 @@
+package org.sssta.qaq.pipeline;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 图片处理流水线，代替各处直接 new AsyncTask。
+ *
+ * 解码、检测、滤镜、编码和存储读写各有一个有界线程池，互不阻塞；
+ * 同一阶段里交互任务排在后台任务前面。
+ * 每个任务属于一个 owner（通常是 Activity），owner 销毁时它的任务全部取消，
+ * 不会再回调也不会继续持有 Activity。
+ */
+public class Pipeline {
+
+    public enum Stage {
+        DECODE(2),
+        DETECT(1),
+        FILTER(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)),
+        ENCODE(1),
+        /**
+         * 本地存储读写，单线程，同一优先级的任务按提交顺序执行
+         */
+        IO(1);
+
+        final int threads;
+
+        Stage(int threads) {
+            this.threads = threads;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+    }
+
+    /**
+     * 用户正在等结果
+     */
+    public static final int PRIORITY_INTERACTIVE = 0;
+    /**
+     * 预取、预渲染等推测性工作
+     */
+    public static final int PRIORITY_BACKGROUND = 1;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static Pipeline sInstance;
+
+    private final ThreadPoolExecutor[] mExecutors = new ThreadPoolExecutor[Stage.values().length];
+    private final Map<Object, List<PipelineTask<?>>> mTasksByOwner = new HashMap<>();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicLong mSequence = new AtomicLong();
+
+    public static synchronized Pipeline get() {
+        if (sInstance == null) {
+            sInstance = new Pipeline();
+        }
+        return sInstance;
+    }
+
+    private Pipeline() {
+        for (final Stage stage : Stage.values()) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(stage.threads, stage.threads,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger mCount = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            return new Thread(r, "qaq-" + stage.name().toLowerCase() + "-"
+                                    + mCount.incrementAndGet());
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            mExecutors[stage.ordinal()] = executor;
+        }
+    }
+
+    /**
+     * 提交任务
+     *
+     * @param owner    任务所属对象，{@link #cancelAll} 时一起取消
+     * @param priority {@link #PRIORITY_INTERACTIVE} 或 {@link #PRIORITY_BACKGROUND}
+     */
+    public <T> PipelineTask<T> submit(Object owner, Stage stage, int priority, PipelineTask<T> task) {
+        synchronized (this) {
+            task.mOwner = owner;
+            task.mStage = stage;
+            task.mRunnable = new StageRunnable<>(task, priority, mSequence.getAndIncrement());
+            List<PipelineTask<?>> tasks = mTasksByOwner.get(owner);
+            if (tasks == null) {
+                tasks = new ArrayList<>();
+                mTasksByOwner.put(owner, tasks);
+            }
+            tasks.add(task);
+        }
+        mExecutors[stage.ordinal()].execute(task.mRunnable);
+        return task;
+    }
+
+    public void cancel(PipelineTask<?> task) {
+        synchronized (this) {
+            detach(task);
+        }
+        task.markCancelled();
+        if (task.mStage != null) {
+            mExecutors[task.mStage.ordinal()].remove(task.mRunnable);
+        }
+    }
+
+    /**
+     * 取消 owner 的所有任务，排队中的直接移出队列，执行中的不再回调
+     */
+    public void cancelAll(Object owner) {
+        List<PipelineTask<?>> tasks;
+        synchronized (this) {
+            tasks = mTasksByOwner.remove(owner);
+        }
+        if (tasks == null) {
+            return;
+        }
+        for (PipelineTask<?> task : tasks) {
+            task.markCancelled();
+            mExecutors[task.mStage.ordinal()].remove(task.mRunnable);
+        }
+    }
+
+    private void detach(PipelineTask<?> task) {
+        List<PipelineTask<?>> tasks = mTasksByOwner.get(task.mOwner);
+        if (tasks != null) {
+            tasks.remove(task);
+            if (tasks.isEmpty()) {
+                mTasksByOwner.remove(task.mOwner);
+            }
+        }
+    }
+
+    private <T> void deliver(final PipelineTask<T> task, final T result, final Exception error) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (Pipeline.this) {
+                    detach(task);
+                }
+                if (task.isCancelled()) {
+                    return;
+                }
+                if (error != null) {
+                    task.onError(error);
+                } else {
+                    task.onResult(result);
+                }
+            }
+        });
+    }
+
+    private class StageRunnable<T> implements Runnable, Comparable<StageRunnable<?>> {
+        private final PipelineTask<T> mTask;
+        private final int mPriority;
+        private final long mSequence;
+
+        StageRunnable(PipelineTask<T> task, int priority, long sequence) {
+            mTask = task;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            if (mTask.isCancelled()) {
+                return;
+            }
+            Process.setThreadPriority(mPriority == PRIORITY_INTERACTIVE
+                    ? Process.THREAD_PRIORITY_DEFAULT : Process.THREAD_PRIORITY_BACKGROUND);
+            T result = null;
+            Exception error = null;
+            try {
+                result = mTask.run();
+            } catch (Exception e) {
+                error = e;
+            } catch (Throwable t) {
+                // 大图分配失败等 Error 也交给 onError，调用方复位状态，工作线程继续取下一个任务
+                error = new ExecutionException(t);
+            }
+            deliver(mTask, result, error);
+        }
+
+        @Override
+        public int compareTo(StageRunnable<?> another) {
+            if (mPriority != another.mPriority) {
+                return mPriority < another.mPriority ? -1 : 1;
+            }
+            return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.sssta.qaq.pipeline;
+
+/**
+ * {@link Pipeline} 中的一个任务。
+ *
+ * {@link #run()} 在对应阶段的后台线程执行，结果通过 {@link #onResult} 或 {@link #onError}
+ * 回到主线程。被取消的任务不会再回调。
+ */
+public abstract class PipelineTask<T> {
+
+    private volatile boolean mCancelled;
+    Object mOwner;
+    Pipeline.Stage mStage;
+    Runnable mRunnable;
+
+    /**
+     * 后台执行，耗时的循环里可以检查 {@link #isCancelled()} 提前结束
+     */
+    protected abstract T run() throws Exception;
+
+    /**
+     * 主线程回调
+     */
+    protected void onResult(T result) {
+    }
+
+    /**
+     * 主线程回调，{@link #run()} 抛出的 Error（比如 OutOfMemoryError）包在
+     * {@link java.util.concurrent.ExecutionException} 里交过来
+     */
+    protected void onError(Exception e) {
+        e.printStackTrace();
+    }
+
+    public final boolean isCancelled() {
+        return mCancelled;
+    }
+
+    public final void cancel() {
+        Pipeline.get().cancel(this);
+    }
+
+    final void markCancelled() {
+        mCancelled = true;
+    }
+}
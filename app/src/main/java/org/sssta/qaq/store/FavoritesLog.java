@@ -0,0 +1,208 @@
+package org.sssta.qaq.store;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.zip.CRC32;
+
+/**
+ * 收藏的追加写日志。
+ *
+ * 文件头之后每条记录是 [操作 1B][名字长度 2B][名字 UTF-8][CRC32 4B]，
+ * 加载时按顺序重放得到有序集合。进程在写一半时被杀只会留下一条坏的尾记录，
+ * 加载时校验失败的尾部直接截掉。失效记录多了以后整体重写（先写临时文件再 rename）。
+ * 只依赖 JDK，不是线程安全的，由调用方保证串行访问。
+ */
+public class FavoritesLog {
+
+    static final int MAGIC = 0x51464156; // "QFAV"
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 5;
+
+    static final byte OP_ADD = 1;
+    static final byte OP_REMOVE = 2;
+
+    /**
+     * 记录数超过有效条目的这么多倍才压缩
+     */
+    private static final int COMPACT_RATIO = 2;
+    private static final int COMPACT_MIN_RECORDS = 64;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mFile;
+    private int mRecordCount;
+    private int mLiveCount;
+
+    public FavoritesLog(File file) {
+        mFile = file;
+    }
+
+    public boolean exists() {
+        return mFile.exists();
+    }
+
+    /**
+     * 重放整个日志，顺带截掉损坏的尾部
+     */
+    public LinkedHashSet<String> load() throws IOException {
+        LinkedHashSet<String> names = new LinkedHashSet<>();
+        mRecordCount = 0;
+        mLiveCount = 0;
+        if (!mFile.exists()) {
+            return names;
+        }
+
+        long validLength = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+        try {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("not a favorites log: " + mFile);
+            }
+            validLength = HEADER_SIZE;
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte op = in.readByte();
+                int length = in.readUnsignedShort();
+                byte[] name = new byte[length];
+                in.readFully(name);
+                int checksum = in.readInt();
+                if (checksum != checksum(crc, op, name) || (op != OP_ADD && op != OP_REMOVE)) {
+                    break;
+                }
+                String value = new String(name, UTF_8);
+                if (op == OP_ADD) {
+                    // 重复收藏时移到最后
+                    names.remove(value);
+                    names.add(value);
+                } else {
+                    names.remove(value);
+                }
+                mRecordCount++;
+                validLength += 1 + 2 + length + 4;
+            }
+        } catch (EOFException e) {
+            // 正常结束，或者最后一条只写了一半
+        } finally {
+            in.close();
+        }
+
+        mLiveCount = names.size();
+        if (validLength < mFile.length()) {
+            RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+            try {
+                file.setLength(validLength);
+            } finally {
+                file.close();
+            }
+        }
+        return names;
+    }
+
+    public void append(boolean add, String name) throws IOException {
+        // 文件头写一半时 load 会把文件截成空的，这里也要重写
+        if (mFile.length() < HEADER_SIZE) {
+            writeHeader(mFile);
+        }
+        FileOutputStream out = new FileOutputStream(mFile, true);
+        try {
+            writeRecord(new DataOutputStream(out), add ? OP_ADD : OP_REMOVE, name);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        mRecordCount++;
+        // 调用方只追加真正改变了集合的操作
+        mLiveCount = Math.max(0, mLiveCount + (add ? 1 : -1));
+    }
+
+    /**
+     * 记录数远多于有效条目时返回 true
+     */
+    public boolean needsCompaction() {
+        return mRecordCount > COMPACT_MIN_RECORDS && mRecordCount > mLiveCount * COMPACT_RATIO;
+    }
+
+    /**
+     * 只保留 live 中的条目重写日志
+     */
+    public void compact(Collection<String> live) throws IOException {
+        File tmp = new File(mFile.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(MAGIC);
+            data.writeByte(VERSION);
+            for (String name : live) {
+                writeRecord(data, OP_ADD, name);
+            }
+            data.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(mFile)) {
+            tmp.delete();
+            throw new IOException("cannot replace " + mFile);
+        }
+        mRecordCount = live.size();
+        mLiveCount = live.size();
+    }
+
+    int getRecordCount() {
+        return mRecordCount;
+    }
+
+    int getLiveCount() {
+        return mLiveCount;
+    }
+
+    private static void writeHeader(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte op, String name) throws IOException {
+        byte[] bytes = name.getBytes(UTF_8);
+        if (bytes.length > 0xffff) {
+            throw new IOException("name too long");
+        }
+        // 整条记录一次写出，减少写一半的窗口
+        byte[] record = new byte[1 + 2 + bytes.length + 4];
+        record[0] = op;
+        record[1] = (byte) (bytes.length >> 8);
+        record[2] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, record, 3, bytes.length);
+        int checksum = checksum(new CRC32(), op, bytes);
+        int offset = 3 + bytes.length;
+        record[offset] = (byte) (checksum >> 24);
+        record[offset + 1] = (byte) (checksum >> 16);
+        record[offset + 2] = (byte) (checksum >> 8);
+        record[offset + 3] = (byte) checksum;
+        out.write(record);
+        out.flush();
+    }
+
+    private static int checksum(CRC32 crc, byte op, byte[] name) {
+        crc.reset();
+        crc.update(op);
+        crc.update(name.length >> 8);
+        crc.update(name.length);
+        crc.update(name, 0, name.length);
+        return (int) crc.getValue();
+    }
+}
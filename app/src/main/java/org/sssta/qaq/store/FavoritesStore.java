@@ -0,0 +1,241 @@
+package org.sssta.qaq.store;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.Log;
+
+import org.sssta.qaq.R;
+import org.sssta.qaq.pipeline.Pipeline;
+import org.sssta.qaq.pipeline.PipelineTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * 我的收藏。
+ *
+ * 内存里是按收藏顺序排列的集合，增删都是 O(1)，立即生效；
+ * 落盘通过 {@link FavoritesLog} 在 {@link Pipeline.Stage#IO} 上串行追加，不阻塞主线程。
+ * 日志在后台加载，加载完成前的增删会在加载后重放并落盘；查询和切换依赖当前状态，
+ * 要等 {@link #isLoaded()} 之后才能调用。条目用 drawable 的资源名保存，资源 id 每次编译都会变。
+ * 所有公开方法在主线程调用。
+ */
+public class FavoritesStore {
+    private static final String TAG = FavoritesStore.class.getSimpleName();
+
+    private static final String LOG_FILE = "favorites.log";
+
+    /**
+     * 第一次运行时的默认收藏，和以前写死的一样
+     */
+    private static final int[] DEFAULT_FAVORITES = {
+            R.drawable.exp2, R.drawable.exp6, R.drawable.exp8,
+            R.drawable.exp12, R.drawable.exp14, R.drawable.exp17
+    };
+
+    private static FavoritesStore sInstance;
+
+    public interface OnChangeListener {
+        void onFavoritesChanged(FavoritesStore store);
+    }
+
+    private final Resources mResources;
+    private final String mPackageName;
+    private final FavoritesLog mLog;
+    private final LinkedHashSet<String> mNames = new LinkedHashSet<>();
+    private final List<OnChangeListener> mListeners = new ArrayList<>();
+
+    private boolean mLoaded;
+    /**
+     * 加载完成前的操作
+     */
+    private final List<PendingOp> mPendingOps = new ArrayList<>();
+
+    private static class PendingOp {
+        final boolean favorite;
+        final String name;
+
+        PendingOp(boolean favorite, String name) {
+            this.favorite = favorite;
+            this.name = name;
+        }
+    }
+
+    public static synchronized FavoritesStore get(Context context) {
+        if (sInstance == null) {
+            sInstance = new FavoritesStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private FavoritesStore(Context context) {
+        mResources = context.getResources();
+        mPackageName = context.getPackageName();
+        mLog = new FavoritesLog(new File(context.getFilesDir(), LOG_FILE));
+        load();
+    }
+
+    private void load() {
+        final List<String> defaults = new ArrayList<>();
+        for (int resId : DEFAULT_FAVORITES) {
+            defaults.add(mResources.getResourceEntryName(resId));
+        }
+        Pipeline.get().submit(this, Pipeline.Stage.IO, Pipeline.PRIORITY_INTERACTIVE,
+                new PipelineTask<LinkedHashSet<String>>() {
+                    @Override
+                    protected LinkedHashSet<String> run() throws IOException {
+                        if (!mLog.exists()) {
+                            LinkedHashSet<String> seeded = new LinkedHashSet<>(defaults);
+                            mLog.compact(seeded);
+                            return seeded;
+                        }
+                        try {
+                            return mLog.load();
+                        } catch (IOException e) {
+                            Log.w(TAG, "favorites log unreadable, starting over", e);
+                            mLog.compact(Collections.<String>emptyList());
+                            return new LinkedHashSet<>();
+                        }
+                    }
+
+                    @Override
+                    protected void onResult(LinkedHashSet<String> names) {
+                        mNames.addAll(names);
+                        mLoaded = true;
+                        for (PendingOp op : mPendingOps) {
+                            // 只落盘真正改变了集合的操作
+                            if (op.favorite != mNames.contains(op.name)) {
+                                apply(op.favorite, op.name);
+                                persist(op.favorite, op.name);
+                            }
+                        }
+                        mPendingOps.clear();
+                        notifyChanged();
+                    }
+                });
+    }
+
+    public boolean isLoaded() {
+        return mLoaded;
+    }
+
+    public void addListener(OnChangeListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(OnChangeListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * 加载完成前集合还是空的，调用前先检查 {@link #isLoaded()}
+     */
+    public boolean isFavorite(int resId) {
+        checkLoaded();
+        return mNames.contains(mResources.getResourceEntryName(resId));
+    }
+
+    public void add(int resId) {
+        setFavorite(resId, true);
+    }
+
+    public void remove(int resId) {
+        setFavorite(resId, false);
+    }
+
+    /**
+     * 同 {@link #isFavorite}，加载完成后才能调用
+     *
+     * @return 切换后是否为收藏
+     */
+    public boolean toggle(int resId) {
+        boolean favorite = !isFavorite(resId);
+        setFavorite(resId, favorite);
+        return favorite;
+    }
+
+    private void setFavorite(int resId, boolean favorite) {
+        String name = mResources.getResourceEntryName(resId);
+        if (!mLoaded) {
+            mPendingOps.add(new PendingOp(favorite, name));
+            return;
+        }
+        if (favorite == mNames.contains(name)) {
+            return;
+        }
+        apply(favorite, name);
+        persist(favorite, name);
+        notifyChanged();
+    }
+
+    private void checkLoaded() {
+        if (!mLoaded) {
+            throw new IllegalStateException("favorites not loaded yet");
+        }
+    }
+
+    private void apply(boolean favorite, String name) {
+        if (favorite) {
+            mNames.add(name);
+        } else {
+            mNames.remove(name);
+        }
+    }
+
+    private void persist(final boolean favorite, final String name) {
+        Pipeline.get().submit(this, Pipeline.Stage.IO, Pipeline.PRIORITY_BACKGROUND,
+                new PipelineTask<Boolean>() {
+                    @Override
+                    protected Boolean run() throws IOException {
+                        mLog.append(favorite, name);
+                        return mLog.needsCompaction();
+                    }
+
+                    @Override
+                    protected void onResult(Boolean needsCompaction) {
+                        if (needsCompaction && mLoaded) {
+                            compact();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * 失效记录太多时用当前集合重写日志，拷贝集合摊到之前的多次追加上仍是 O(1)
+     */
+    private void compact() {
+        final List<String> snapshot = new ArrayList<>(mNames);
+        Pipeline.get().submit(this, Pipeline.Stage.IO, Pipeline.PRIORITY_BACKGROUND,
+                new PipelineTask<Void>() {
+                    @Override
+                    protected Void run() throws IOException {
+                        mLog.compact(snapshot);
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * 按收藏顺序返回 drawable id，已经不存在的资源跳过
+     */
+    public List<Integer> getResourceIds() {
+        List<Integer> ids = new ArrayList<>(mNames.size());
+        for (String name : mNames) {
+            int id = mResources.getIdentifier(name, "drawable", mPackageName);
+            if (id != 0) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private void notifyChanged() {
+        for (OnChangeListener listener : new ArrayList<>(mListeners)) {
+            listener.onFavoritesChanged(this);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package org.sssta.qaq.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 生成记录的磁盘索引。
+ *
+ * history.idx 是定长记录 [时间 8B][模板 4B][数据长度 4B][数据偏移 8B]，记录号就是下标，
+ * 时间严格递增，按时间查找直接在文件上二分；变长的输出 Uri 和原图路径追加在 history.dat 里。
+ * 每个模板另有一个倒排文件 template-N.idx，按顺序存属于它的记录号，按模板查询同样是二分加顺序读。
+ * 一次查询只读一页记录，和总数无关。
+ *
+ * 追加顺序是数据、倒排、索引，索引记录最后写，所以被杀时最多留下没人引用的数据和
+ * 指向不存在记录的倒排项，打开时截掉。只依赖 JDK，不是线程安全的，由调用方保证串行访问。
+ */
+public class HistoryIndex {
+
+    static final int MAGIC = 0x51484953; // "QHIS"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 24;
+
+    static final String INDEX_FILE = "history.idx";
+    static final String DATA_FILE = "history.dat";
+    static final String POSTINGS_PREFIX = "template-";
+    static final String POSTINGS_SUFFIX = ".idx";
+
+    /**
+     * 查询所有模板
+     */
+    public static final int ANY_TEMPLATE = -1;
+
+    /**
+     * 一条生成记录
+     */
+    public static class Entry {
+        public final int id;
+        public final long time;
+        public final int template;
+        public final String output;
+        public final String source;
+
+        Entry(int id, long time, int template, String output, String source) {
+            this.id = id;
+            this.time = time;
+            this.template = template;
+            this.output = output;
+            this.source = source;
+        }
+    }
+
+    private final File mDirectory;
+    private final RandomAccessFile mIndex;
+    private final RandomAccessFile mData;
+    private final Map<Integer, RandomAccessFile> mPostings = new HashMap<>();
+    private int mSize;
+    private long mLastTime;
+
+    public HistoryIndex(File directory) throws IOException {
+        mDirectory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        mIndex = new RandomAccessFile(new File(directory, INDEX_FILE), "rw");
+        mData = new RandomAccessFile(new File(directory, DATA_FILE), "rw");
+
+        if (mIndex.length() < HEADER_SIZE) {
+            mIndex.setLength(0);
+            mIndex.writeInt(MAGIC);
+            mIndex.writeInt(VERSION);
+            mData.setLength(0);
+        } else {
+            mIndex.seek(0);
+            if (mIndex.readInt() != MAGIC || mIndex.readInt() != VERSION) {
+                close();
+                throw new IOException("not a history index: " + directory);
+            }
+        }
+        // 去掉写了一半的尾记录
+        mSize = (int) ((mIndex.length() - HEADER_SIZE) / RECORD_SIZE);
+        mIndex.setLength(recordOffset(mSize));
+        mLastTime = mSize > 0 ? readTime(mSize - 1) : 0;
+
+        // 倒排要在追加新记录之前修剪，否则残留的项会指向别的模板的新记录
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(POSTINGS_PREFIX) && name.endsWith(POSTINGS_SUFFIX)) {
+                    try {
+                        postings(Integer.parseInt(name.substring(POSTINGS_PREFIX.length(),
+                                name.length() - POSTINGS_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // 不是我们的文件
+                    }
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int size(int template) throws IOException {
+        return template == ANY_TEMPLATE ? mSize : postingCount(postings(template));
+    }
+
+    /**
+     * 追加一条记录，time 不大于上一条时顺延 1ms，保证时间可以当作翻页游标
+     */
+    public Entry append(long time, int template, String output, String source) throws IOException {
+        if (template < 0) {
+            throw new IllegalArgumentException("template " + template);
+        }
+        time = Math.max(time, mLastTime + 1);
+        int id = mSize;
+
+        long dataOffset = mData.length();
+        mData.seek(dataOffset);
+        mData.writeUTF(output == null ? "" : output);
+        mData.writeUTF(source == null ? "" : source);
+        int dataLength = (int) (mData.getFilePointer() - dataOffset);
+
+        RandomAccessFile postings = postings(template);
+        postings.seek(postings.length());
+        postings.writeInt(id);
+
+        byte[] record = new byte[RECORD_SIZE];
+        putLong(record, 0, time);
+        putInt(record, 8, template);
+        putInt(record, 12, dataLength);
+        putLong(record, 16, dataOffset);
+        mIndex.seek(recordOffset(id));
+        mIndex.write(record);
+
+        mSize++;
+        mLastTime = time;
+        return new Entry(id, time, template, output, source);
+    }
+
+    public Entry get(int id) throws IOException {
+        if (id < 0 || id >= mSize) {
+            throw new IndexOutOfBoundsException("id " + id + " size " + mSize);
+        }
+        mIndex.seek(recordOffset(id));
+        long time = mIndex.readLong();
+        int template = mIndex.readInt();
+        mIndex.readInt();
+        long dataOffset = mIndex.readLong();
+        mData.seek(dataOffset);
+        String output = mData.readUTF();
+        String source = mData.readUTF();
+        return new Entry(id, time, template, output.isEmpty() ? null : output,
+                source.isEmpty() ? null : source);
+    }
+
+    /**
+     * 从新到旧返回时间早于 before 的最多 limit 条记录
+     *
+     * @param template 模板下标，或者 {@link #ANY_TEMPLATE}
+     * @param before   第一页传 {@link Long#MAX_VALUE}，之后传上一页最后一条的时间
+     */
+    public List<Entry> query(int template, long before, int limit) throws IOException {
+        List<Entry> entries = new ArrayList<>(Math.max(0, limit));
+        if (template == ANY_TEMPLATE) {
+            int end = lowerBound(before);
+            for (int id = end - 1; id >= 0 && entries.size() < limit; id--) {
+                entries.add(get(id));
+            }
+            return entries;
+        }
+
+        RandomAccessFile postings = postings(template);
+        // 记录号随时间递增，倒排里的记录号也是递增的
+        int lo = 0;
+        int hi = postingCount(postings);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (readTime(readPosting(postings, mid)) < before) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo - 1; i >= 0 && entries.size() < limit; i--) {
+            entries.add(get(readPosting(postings, i)));
+        }
+        return entries;
+    }
+
+    /**
+     * 第一条时间不早于 time 的记录号
+     */
+    public int lowerBound(long time) throws IOException {
+        int lo = 0;
+        int hi = mSize;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (readTime(mid) < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    public void close() throws IOException {
+        for (RandomAccessFile postings : mPostings.values()) {
+            postings.close();
+        }
+        mPostings.clear();
+        mIndex.close();
+        mData.close();
+    }
+
+    private RandomAccessFile postings(int template) throws IOException {
+        RandomAccessFile postings = mPostings.get(template);
+        if (postings == null) {
+            postings = new RandomAccessFile(new File(mDirectory, POSTINGS_PREFIX + template + POSTINGS_SUFFIX), "rw");
+            // 截掉不完整的项和指向没写成功的记录的项
+            int count = (int) (postings.length() / 4);
+            while (count > 0 && readPosting(postings, count - 1) >= mSize) {
+                count--;
+            }
+            postings.setLength(count * 4L);
+            mPostings.put(template, postings);
+        }
+        return postings;
+    }
+
+    private static int postingCount(RandomAccessFile postings) throws IOException {
+        return (int) (postings.length() / 4);
+    }
+
+    private static int readPosting(RandomAccessFile postings, int index) throws IOException {
+        postings.seek(index * 4L);
+        return postings.readInt();
+    }
+
+    private long readTime(int id) throws IOException {
+        mIndex.seek(recordOffset(id));
+        return mIndex.readLong();
+    }
+
+    private static long recordOffset(int id) {
+        return HEADER_SIZE + (long) id * RECORD_SIZE;
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >> 24);
+        buffer[offset + 1] = (byte) (value >> 16);
+        buffer[offset + 2] = (byte) (value >> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static void putLong(byte[] buffer, int offset, long value) {
+        putInt(buffer, offset, (int) (value >> 32));
+        putInt(buffer, offset + 4, (int) value);
+    }
+}
@@ -0,0 +1,177 @@
+package org.sssta.qaq.store;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.Log;
+
+import org.sssta.qaq.pipeline.Pipeline;
+import org.sssta.qaq.pipeline.PipelineTask;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 生成过的表情的历史记录。
+ *
+ * 每次导出记下模板、输出 Uri、原图路径和一张缩略图，索引见 {@link HistoryIndex}。
+ * 读写都在 {@link Pipeline.Stage#IO} 上串行执行，查询按页返回，历史再多打开也是一页的开销。
+ * 所有公开方法在主线程调用。
+ */
+public class HistoryStore {
+    private static final String TAG = HistoryStore.class.getSimpleName();
+
+    private static final String DIRECTORY = "history";
+    private static final String THUMBNAIL_DIRECTORY = "thumbs";
+
+    /**
+     * 缩略图长边，和图库格子差不多大
+     */
+    private static final int THUMBNAIL_SIZE = 256;
+    private static final int THUMBNAIL_QUALITY = 80;
+
+    private static HistoryStore sInstance;
+
+    public interface Callback {
+        void onPage(List<HistoryIndex.Entry> entries);
+    }
+
+    public interface OnChangeListener {
+        void onHistoryAdded(HistoryIndex.Entry entry);
+    }
+
+    private final File mDirectory;
+    private final File mThumbnails;
+    private final List<OnChangeListener> mListeners = new ArrayList<>();
+    /**
+     * 只在 IO 线程上访问
+     */
+    private HistoryIndex mIndex;
+
+    public static synchronized HistoryStore get(Context context) {
+        if (sInstance == null) {
+            sInstance = new HistoryStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private HistoryStore(Context context) {
+        mDirectory = new File(context.getFilesDir(), DIRECTORY);
+        mThumbnails = new File(mDirectory, THUMBNAIL_DIRECTORY);
+    }
+
+    public void addListener(OnChangeListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(OnChangeListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * 记录一次导出，缩略图在后台生成
+     *
+     * @param template 模板在 {@link org.sssta.qaq.TemplateID#templateIDList} 里的下标
+     * @param source   原图路径，没有时传 null
+     */
+    public void record(final int template, final Bitmap composite, final Uri output, final String source) {
+        final long time = System.currentTimeMillis();
+        Pipeline.get().submit(this, Pipeline.Stage.IO, Pipeline.PRIORITY_BACKGROUND,
+                new PipelineTask<HistoryIndex.Entry>() {
+                    @Override
+                    protected HistoryIndex.Entry run() throws IOException {
+                        HistoryIndex index = openIndex();
+                        // 先写缩略图再写索引，被杀时下一条记录会覆盖这张图
+                        writeThumbnail(getThumbnail(index.size()), composite);
+                        return index.append(time, template, output.toString(), source);
+                    }
+
+                    @Override
+                    protected void onResult(HistoryIndex.Entry entry) {
+                        for (OnChangeListener listener : new ArrayList<>(mListeners)) {
+                            listener.onHistoryAdded(entry);
+                        }
+                    }
+
+                    @Override
+                    protected void onError(Exception e) {
+                        Log.w(TAG, "cannot record history", e);
+                    }
+                });
+    }
+
+    /**
+     * 从新到旧查询一页
+     *
+     * @param owner    结果回调所属对象，owner 销毁时用 {@link Pipeline#cancelAll} 取消
+     * @param template 模板下标或者 {@link HistoryIndex#ANY_TEMPLATE}
+     * @param before   第一页传 {@link Long#MAX_VALUE}，之后传上一页最后一条的时间
+     */
+    public PipelineTask<List<HistoryIndex.Entry>> query(Object owner, final int template, final long before,
+                                                        final int limit, final Callback callback) {
+        return Pipeline.get().submit(owner, Pipeline.Stage.IO, Pipeline.PRIORITY_INTERACTIVE,
+                new PipelineTask<List<HistoryIndex.Entry>>() {
+                    @Override
+                    protected List<HistoryIndex.Entry> run() throws IOException {
+                        return openIndex().query(template, before, limit);
+                    }
+
+                    @Override
+                    protected void onResult(List<HistoryIndex.Entry> entries) {
+                        callback.onPage(entries);
+                    }
+                });
+    }
+
+    public File getThumbnail(int id) {
+        return new File(mThumbnails, id + ".webp");
+    }
+
+    private HistoryIndex openIndex() throws IOException {
+        if (mIndex == null) {
+            try {
+                mIndex = new HistoryIndex(mDirectory);
+            } catch (IOException e) {
+                Log.w(TAG, "history index unreadable, starting over", e);
+                deleteContents(mDirectory);
+                mIndex = new HistoryIndex(mDirectory);
+            }
+        }
+        return mIndex;
+    }
+
+    private void writeThumbnail(File file, Bitmap composite) throws IOException {
+        if (!mThumbnails.isDirectory() && !mThumbnails.mkdirs()) {
+            throw new IOException("cannot create " + mThumbnails);
+        }
+        float scale = Math.min(1f, THUMBNAIL_SIZE / (float) Math.max(composite.getWidth(), composite.getHeight()));
+        Bitmap thumbnail = Bitmap.createScaledBitmap(composite,
+                Math.max(1, Math.round(composite.getWidth() * scale)),
+                Math.max(1, Math.round(composite.getHeight() * scale)), true);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            thumbnail.compress(Bitmap.CompressFormat.WEBP, THUMBNAIL_QUALITY, out);
+        } finally {
+            out.close();
+            if (thumbnail != composite) {
+                thumbnail.recycle();
+            }
+        }
+    }
+
+    private static void deleteContents(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                deleteContents(file);
+            }
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package org.sssta.qaq.thumbnail;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按总大小淘汰的磁盘缓存。
+ *
+ * 每条记录一个文件，文件名是 key 的 MD5；访问顺序记在追加写的 journal 里，
+ * 重启后重放 journal 恢复 LRU 顺序。写入先写临时文件再 rename，进程中途被杀也不会留下半个文件。
+ * 所有方法线程安全，但都有 IO，不要在主线程调用。
+ */
+public class DiskCache {
+
+    static final String JOURNAL = "journal";
+    static final String JOURNAL_TMP = "journal.tmp";
+    static final String MAGIC = "qaq.DiskCache 1";
+
+    private static final String CLEAN = "CLEAN";
+    private static final String READ = "READ";
+    private static final String REMOVE = "REMOVE";
+
+    /**
+     * 冗余记录超过这个数并且多于有效记录时重写 journal
+     */
+    private static final int REBUILD_THRESHOLD = 2000;
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(0, 0.75f, true);
+    private long mSize;
+    private int mRedundantOps;
+    private Writer mJournal;
+
+    public DiskCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (mJournal != null) {
+            return;
+        }
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            throw new IOException("cannot create " + mDirectory);
+        }
+        File journal = new File(mDirectory, JOURNAL);
+        if (journal.exists()) {
+            try {
+                readJournal(journal);
+            } catch (IOException e) {
+                // journal 坏了就清空重来，缓存丢了可以重建
+                mEntries.clear();
+                mSize = 0;
+                deleteContents();
+            }
+        }
+        rebuildJournal();
+    }
+
+    private void readJournal(File journal) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), "UTF-8"));
+        try {
+            if (!MAGIC.equals(reader.readLine())) {
+                throw new IOException("unexpected journal header");
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (parts.length < 2) {
+                    continue;
+                }
+                String name = parts[1];
+                if (CLEAN.equals(parts[0]) && parts.length == 3) {
+                    Long old = mEntries.put(name, Long.parseLong(parts[2]));
+                    if (old != null) {
+                        mSize -= old;
+                    }
+                    mSize += Long.parseLong(parts[2]);
+                } else if (READ.equals(parts[0])) {
+                    mEntries.get(name);
+                } else if (REMOVE.equals(parts[0])) {
+                    Long old = mEntries.remove(name);
+                    if (old != null) {
+                        mSize -= old;
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("corrupt journal");
+        } finally {
+            reader.close();
+        }
+
+        // 丢掉文件已经不在的记录
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (!new File(mDirectory, entry.getKey()).exists()) {
+                mSize -= entry.getValue();
+                iterator.remove();
+            }
+        }
+    }
+
+    private void rebuildJournal() throws IOException {
+        if (mJournal != null) {
+            mJournal.close();
+        }
+        File tmp = new File(mDirectory, JOURNAL_TMP);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+        try {
+            writer.write(MAGIC);
+            writer.write('\n');
+            for (Map.Entry<String, Long> entry : mEntries.entrySet()) {
+                writer.write(CLEAN + ' ' + entry.getKey() + ' ' + entry.getValue() + '\n');
+            }
+        } finally {
+            writer.close();
+        }
+        if (!tmp.renameTo(new File(mDirectory, JOURNAL))) {
+            throw new IOException("cannot rename journal");
+        }
+        mRedundantOps = 0;
+        mJournal = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(mDirectory, JOURNAL), true), "UTF-8"));
+    }
+
+    private void deleteContents() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * @return 缓存文件，不存在时返回 null。返回后文件随时可能被别的线程淘汰，要读内容用 {@link #open}
+     */
+    public synchronized File get(String key) throws IOException {
+        ensureOpen();
+        String name = fileName(key);
+        if (mEntries.get(name) == null) {
+            return null;
+        }
+        File file = new File(mDirectory, name);
+        if (!file.exists()) {
+            removeEntry(name);
+            return null;
+        }
+        mJournal.write(READ + ' ' + name + '\n');
+        mRedundantOps++;
+        rebuildIfNeeded();
+        return file;
+    }
+
+    /**
+     * 在锁内打开缓存文件，之后即使被淘汰删掉，已经打开的流也能读完
+     *
+     * @return 不存在时返回 null
+     */
+    public synchronized InputStream open(String key) throws IOException {
+        File file = get(key);
+        if (file == null) {
+            return null;
+        }
+        try {
+            return new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            removeEntry(fileName(key));
+            return null;
+        }
+    }
+
+    public synchronized void put(String key, byte[] data) throws IOException {
+        ensureOpen();
+        String name = fileName(key);
+        File tmp = new File(mDirectory, name + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(new File(mDirectory, name))) {
+            tmp.delete();
+            throw new IOException("cannot rename " + tmp);
+        }
+
+        Long old = mEntries.put(name, (long) data.length);
+        if (old != null) {
+            mSize -= old;
+            mRedundantOps++;
+        }
+        mSize += data.length;
+        mJournal.write(CLEAN + ' ' + name + ' ' + data.length + '\n');
+        mJournal.flush();
+
+        trimToSize();
+        rebuildIfNeeded();
+    }
+
+    public synchronized void remove(String key) throws IOException {
+        ensureOpen();
+        removeEntry(fileName(key));
+    }
+
+    public synchronized long size() throws IOException {
+        ensureOpen();
+        return mSize;
+    }
+
+    private void removeEntry(String name) throws IOException {
+        Long old = mEntries.remove(name);
+        if (old == null) {
+            return;
+        }
+        mSize -= old;
+        new File(mDirectory, name).delete();
+        mJournal.write(REMOVE + ' ' + name + '\n');
+        mJournal.flush();
+        mRedundantOps += 2;
+    }
+
+    private void trimToSize() throws IOException {
+        while (mSize > mMaxBytes && !mEntries.isEmpty()) {
+            removeEntry(mEntries.keySet().iterator().next());
+        }
+    }
+
+    private void rebuildIfNeeded() throws IOException {
+        if (mRedundantOps >= REBUILD_THRESHOLD && mRedundantOps >= mEntries.size()) {
+            rebuildJournal();
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        if (mJournal != null) {
+            mJournal.close();
+            mJournal = null;
+        }
+    }
+
+    static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+                builder.append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package org.sssta.qaq.thumbnail;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import org.sssta.qaq.pipeline.Pipeline;
+import org.sssta.qaq.pipeline.PipelineTask;
+import org.sssta.qaq.trace.StageTracer;
+import org.sssta.qaq.utils.MemoryGovernor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * 表情库缩略图加载。
+ *
+ * 按格子大小在 {@link Pipeline.Stage#DECODE} 上解码，结果依次放进内存 LRU 和磁盘缓存。
+ * 从内存 LRU 淘汰、并且没有显示在任何 ImageView 上的 Bitmap 进入复用池，
+ * 之后的解码通过 inBitmap 直接写进去。View 被回收或重新绑定时未完成的请求会被取消。
+ * 除了解码本身，所有方法都在主线程调用。
+ */
+public class ThumbnailLoader implements MemoryGovernor.Client {
+
+    private static final long DISK_CACHE_BYTES = 16 * 1024 * 1024;
+    private static final int DISK_CACHE_QUALITY = 90;
+    private static final int MAX_POOL_SIZE = 8;
+
+    /**
+     * 平均解码耗时的平滑系数
+     */
+    private static final float DECODE_TIME_SMOOTHING = 0.2f;
+    private static final float INITIAL_DECODE_MILLIS = 30f;
+
+    private static ThumbnailLoader sInstance;
+
+    private final Resources mResources;
+    private final DiskCache mDiskCache;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final List<Bitmap> mPool = new ArrayList<>();
+
+    private final Map<ImageView, PipelineTask<Bitmap>> mPending = new WeakHashMap<>();
+    private final Map<ImageView, Bitmap> mBound = new WeakHashMap<>();
+    private final Map<Bitmap, Integer> mUseCounts = new IdentityHashMap<>();
+    /**
+     * 当前在内存 LRU 里的 Bitmap，放进去之前加入，entryRemoved 时移除
+     */
+    private final Set<Bitmap> mResident = Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+    private volatile float mAverageDecodeMillis = INITIAL_DECODE_MILLIS;
+
+    /**
+     * 图片来源，资源 id 或者文件路径
+     */
+    public static abstract class Source {
+        public abstract String key(Resources resources);
+
+        public abstract InputStream open(Resources resources) throws IOException;
+
+        public static Source resource(final int resId) {
+            return new Source() {
+                @Override
+                public String key(Resources resources) {
+                    // 资源 id 每次编译都可能变，磁盘缓存用资源名
+                    return "res:" + resources.getResourceEntryName(resId);
+                }
+
+                @Override
+                public InputStream open(Resources resources) {
+                    return resources.openRawResource(resId);
+                }
+            };
+        }
+
+        /**
+         * 用文件修改时间区分内容，key 里要查一次磁盘，不适合在列表绑定时频繁调用
+         */
+        public static Source file(final String path) {
+            return file(path, new File(path).lastModified());
+        }
+
+        /**
+         * @param version 调用方已知的内容版本，文件内容变化时必须跟着变
+         */
+        public static Source file(final String path, final long version) {
+            return new Source() {
+                @Override
+                public String key(Resources resources) {
+                    return "file:" + path + "#" + version;
+                }
+
+                @Override
+                public InputStream open(Resources resources) throws IOException {
+                    return new FileInputStream(path);
+                }
+            };
+        }
+    }
+
+    public static synchronized ThumbnailLoader get(Context context) {
+        if (sInstance == null) {
+            sInstance = new ThumbnailLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ThumbnailLoader(Context context) {
+        mResources = context.getResources();
+        mDiskCache = new DiskCache(new File(context.getCacheDir(), "thumbnails"), DISK_CACHE_BYTES);
+        MemoryGovernor governor = MemoryGovernor.get(context);
+        mMemoryCache = new LruCache<String, Bitmap>((int) (governor.getBudgetBytes() / 4)) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (oldValue == newValue) {
+                    return;
+                }
+                mResident.remove(oldValue);
+                if (!mUseCounts.containsKey(oldValue)) {
+                    recycleToPool(oldValue);
+                }
+            }
+        };
+        governor.register(this);
+    }
+
+    /**
+     * 把 source 解码成边长不超过 size 的缩略图显示在 view 上
+     */
+    public void load(final ImageView view, Source source, int size) {
+        cancel(view);
+        final String key = source.key(mResources) + "@" + size;
+        Bitmap cached = mMemoryCache.get(key);
+        if (cached != null) {
+            bind(view, cached);
+            return;
+        }
+        PipelineTask<Bitmap> task = new DecodeTask(source, key, size) {
+            @Override
+            protected void onResult(Bitmap bitmap) {
+                mPending.remove(view);
+                if (bitmap != null) {
+                    // 先占用再放进缓存，放进去时被淘汰也不会进复用池
+                    bind(view, bitmap);
+                }
+                super.onResult(bitmap);
+            }
+        };
+        mPending.put(view, task);
+        Pipeline.get().submit(view.getContext(), Pipeline.Stage.DECODE, Pipeline.PRIORITY_INTERACTIVE, task);
+    }
+
+    /**
+     * 提前解码放进缓存，不绑定到 View
+     *
+     * @return 已经在内存里时返回 null
+     */
+    public PipelineTask<Bitmap> prefetch(Object owner, Source source, int size) {
+        String key = source.key(mResources) + "@" + size;
+        if (mMemoryCache.get(key) != null) {
+            return null;
+        }
+        return Pipeline.get().submit(owner, Pipeline.Stage.DECODE, Pipeline.PRIORITY_BACKGROUND,
+                new DecodeTask(source, key, size));
+    }
+
+    /**
+     * view 被回收时调用，取消未完成的请求并交还它显示的 Bitmap
+     */
+    public void cancel(ImageView view) {
+        PipelineTask<Bitmap> task = mPending.remove(view);
+        if (task != null) {
+            task.cancel();
+        }
+        Bitmap bitmap = mBound.remove(view);
+        if (bitmap != null) {
+            view.setImageDrawable(null);
+            release(bitmap);
+        }
+    }
+
+    private void bind(ImageView view, Bitmap bitmap) {
+        Integer count = mUseCounts.get(bitmap);
+        mUseCounts.put(bitmap, count == null ? 1 : count + 1);
+        mBound.put(view, bitmap);
+        view.setImageBitmap(bitmap);
+    }
+
+    private void release(Bitmap bitmap) {
+        Integer count = mUseCounts.get(bitmap);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            mUseCounts.put(bitmap, count - 1);
+            return;
+        }
+        mUseCounts.remove(bitmap);
+        // 已经被 LRU 淘汰了，没人再用
+        if (!mResident.contains(bitmap)) {
+            recycleToPool(bitmap);
+        }
+    }
+
+    private void recycleToPool(Bitmap bitmap) {
+        if (!bitmap.isMutable() || bitmap.isRecycled()) {
+            return;
+        }
+        synchronized (mPool) {
+            if (mPool.size() >= MAX_POOL_SIZE) {
+                mPool.remove(0).recycle();
+            }
+            mPool.add(bitmap);
+        }
+    }
+
+    private synchronized void recordDecodeTime(long millis) {
+        mAverageDecodeMillis += (millis - mAverageDecodeMillis) * DECODE_TIME_SMOOTHING;
+    }
+
+    /**
+     * 最近一段时间单张缩略图的平均解码耗时，包括读磁盘缓存
+     */
+    public float getAverageDecodeMillis() {
+        return mAverageDecodeMillis;
+    }
+
+    /**
+     * 解码线程调用，取一个装得下的 Bitmap
+     */
+    private Bitmap takeReusable(int width, int height) {
+        long bytes = (long) width * height * 4;
+        synchronized (mPool) {
+            for (Iterator<Bitmap> iterator = mPool.iterator(); iterator.hasNext(); ) {
+                Bitmap bitmap = iterator.next();
+                if (bitmap.getAllocationByteCount() >= bytes) {
+                    iterator.remove();
+                    return bitmap;
+                }
+            }
+        }
+        return null;
+    }
+
+    private class DecodeTask extends PipelineTask<Bitmap> {
+        private final Source mSource;
+        private final String mKey;
+        private final int mSize;
+
+        DecodeTask(Source source, String key, int size) {
+            mSource = source;
+            mKey = key;
+            mSize = size;
+        }
+
+        @Override
+        protected Bitmap run() throws IOException {
+            StageTracer.Span span = StageTracer.begin(StageTracer.DECODE);
+            long start = SystemClock.uptimeMillis();
+            try {
+                return decode();
+            } finally {
+                span.end();
+                recordDecodeTime(SystemClock.uptimeMillis() - start);
+            }
+        }
+
+        private Bitmap decode() throws IOException {
+            InputStream cachedIn = mDiskCache.open(mKey);
+            if (cachedIn != null) {
+                byte[] cached;
+                try {
+                    cached = readFully(cachedIn);
+                } finally {
+                    cachedIn.close();
+                }
+                Bitmap bitmap = decodeStream(cached, 1, 0, 0);
+                if (bitmap != null) {
+                    return bitmap;
+                }
+                mDiskCache.remove(mKey);
+            }
+            if (isCancelled()) {
+                return null;
+            }
+
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            InputStream in = mSource.open(mResources);
+            try {
+                BitmapFactory.decodeStream(in, null, bounds);
+            } finally {
+                in.close();
+            }
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+                return null;
+            }
+
+            // 先按 2 的幂降采样，剩下的用密度缩放一次解到目标尺寸
+            int longSide = Math.max(bounds.outWidth, bounds.outHeight);
+            int sampleSize = 1;
+            while (longSide / (sampleSize * 2) >= mSize) {
+                sampleSize *= 2;
+            }
+            int sampledLongSide = longSide / sampleSize;
+            Bitmap bitmap = decodeStream(null, sampleSize,
+                    sampledLongSide > mSize ? sampledLongSide : 0, mSize);
+            if (bitmap == null) {
+                return null;
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (bitmap.compress(Bitmap.CompressFormat.WEBP, DISK_CACHE_QUALITY, out)) {
+                mDiskCache.put(mKey, out.toByteArray());
+            }
+            return bitmap;
+        }
+
+        /**
+         * @param cached  磁盘缓存的内容，为 null 时从原图解码
+         * @param density 大于 0 时按 targetDensity / density 缩放
+         */
+        private Bitmap decodeStream(byte[] cached, int sampleSize, int density, int targetDensity)
+                throws IOException {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            options.inMutable = true;
+            if (density > 0) {
+                options.inScaled = true;
+                options.inDensity = density;
+                options.inTargetDensity = targetDensity;
+            }
+            // 复用池里的 Bitmap 只要容量够就能用
+            options.inBitmap = takeReusable(mSize, mSize);
+            InputStream in = cached != null ? new ByteArrayInputStream(cached) : mSource.open(mResources);
+            try {
+                return BitmapFactory.decodeStream(in, null, options);
+            } catch (IllegalArgumentException e) {
+                if (options.inBitmap == null) {
+                    throw e;
+                }
+            } finally {
+                in.close();
+            }
+            // 复用失败就正常分配
+            options.inBitmap = null;
+            in = cached != null ? new ByteArrayInputStream(cached) : mSource.open(mResources);
+            try {
+                return BitmapFactory.decodeStream(in, null, options);
+            } finally {
+                in.close();
+            }
+        }
+
+        private byte[] readFully(InputStream in) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+
+        @Override
+        protected void onResult(Bitmap bitmap) {
+            if (bitmap != null) {
+                // 先登记再放，放进去时马上被淘汰也能在 entryRemoved 里去掉
+                mResident.add(bitmap);
+                mMemoryCache.put(mKey, bitmap);
+            }
+        }
+    }
+
+    @Override
+    public long getBitmapByteCount() {
+        long bytes = mMemoryCache.size();
+        synchronized (mPool) {
+            for (Bitmap bitmap : mPool) {
+                bytes += bitmap.getAllocationByteCount();
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public int getTrimPriority() {
+        return MemoryGovernor.PRIORITY_CACHE;
+    }
+
+    @Override
+    public long trimBitmaps() {
+        long before = getBitmapByteCount();
+        mMemoryCache.evictAll();
+        synchronized (mPool) {
+            for (Bitmap bitmap : mPool) {
+                bitmap.recycle();
+            }
+            mPool.clear();
+        }
+        // 正在显示的还被 View 引用着，省不下来
+        long inUse = 0;
+        for (Bitmap bitmap : mUseCounts.keySet()) {
+            inUse += bitmap.getByteCount();
+        }
+        return Math.max(0, before - inUse);
+    }
+}
@@ -0,0 +1,95 @@
+package org.sssta.qaq.trace;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 把 span 记成 Chrome trace event 格式的 JSON，可以直接拖进 chrome://tracing 或 Perfetto 查看。
+ *
+ * 只保留最近 capacity 条，满了覆盖最旧的。只依赖 JDK。
+ */
+public class JsonTimelineSink implements StageTracer.Sink {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final String[] mNames;
+    private final long[] mStarts;
+    private final long[] mDurations;
+    private final long[] mThreadIds;
+    private final long mOriginNanos = System.nanoTime();
+    private int mNext;
+    private int mSize;
+
+    public JsonTimelineSink() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public JsonTimelineSink(int capacity) {
+        mNames = new String[capacity];
+        mStarts = new long[capacity];
+        mDurations = new long[capacity];
+        mThreadIds = new long[capacity];
+    }
+
+    @Override
+    public void onBegin(String name) {
+    }
+
+    @Override
+    public synchronized void onEnd(String name, long startNanos, long endNanos) {
+        mNames[mNext] = name;
+        mStarts[mNext] = startNanos;
+        mDurations[mNext] = endNanos - startNanos;
+        mThreadIds[mNext] = Thread.currentThread().getId();
+        mNext = (mNext + 1) % mNames.length;
+        mSize = Math.min(mSize + 1, mNames.length);
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized void clear() {
+        mNext = 0;
+        mSize = 0;
+    }
+
+    /**
+     * 按记录顺序输出 {"traceEvents":[...]}，时间单位微秒
+     */
+    public synchronized void writeTo(Writer writer) throws IOException {
+        writer.write("{\"traceEvents\":[");
+        int first = (mNext - mSize + mNames.length) % mNames.length;
+        for (int i = 0; i < mSize; i++) {
+            int index = (first + i) % mNames.length;
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write("{\"name\":\"");
+            writeEscaped(writer, mNames[index]);
+            writer.write("\",\"ph\":\"X\",\"pid\":0,\"tid\":");
+            writer.write(Long.toString(mThreadIds[index]));
+            writer.write(",\"ts\":");
+            writer.write(Long.toString((mStarts[index] - mOriginNanos) / 1000));
+            writer.write(",\"dur\":");
+            writer.write(Long.toString(mDurations[index] / 1000));
+            writer.write('}');
+        }
+        writer.write("]}");
+        writer.flush();
+    }
+
+    private static void writeEscaped(Writer writer, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.sssta.qaq.trace;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 从选图到分享各阶段的耗时打点。
+ *
+ * 只依赖 JDK，纯 Java 的图像算法和 Android 代码用同一套接口，实验室和真机的数据可以对齐。
+ * 没有安装 {@link Sink} 时 {@link #begin} 返回共享的空实现，几乎没有开销。
+ * 一个 span 必须在开始它的线程里结束：
+ * <pre>
+ * StageTracer.Span span = StageTracer.begin("decode");
+ * try {
+ *     ...
+ * } finally {
+ *     span.end();
+ * }
+ * </pre>
+ */
+public final class StageTracer {
+
+    public static final String DECODE = "decode";
+    public static final String DETECT = "detect";
+    public static final String CROP = "crop";
+    public static final String STYLIZE = "stylize";
+    public static final String COMPOSE = "compose";
+    public static final String ENCODE = "encode";
+    public static final String MEDIASTORE_INSERT = "mediastore-insert";
+
+    public interface Sink {
+        /**
+         * 在 span 所在线程调用
+         */
+        void onBegin(String name);
+
+        /**
+         * 在 span 所在线程调用，时间单位是 {@link System#nanoTime()}
+         */
+        void onEnd(String name, long startNanos, long endNanos);
+    }
+
+    public static class Span {
+        private final String mName;
+        private final long mStartNanos;
+
+        private Span(String name, long startNanos) {
+            mName = name;
+            mStartNanos = startNanos;
+        }
+
+        public void end() {
+            long endNanos = System.nanoTime();
+            for (Sink sink : sSinks) {
+                sink.onEnd(mName, mStartNanos, endNanos);
+            }
+        }
+    }
+
+    private static final Span NO_OP = new Span("", 0) {
+        @Override
+        public void end() {
+        }
+    };
+
+    private static final CopyOnWriteArrayList<Sink> sSinks = new CopyOnWriteArrayList<>();
+
+    private StageTracer() {
+    }
+
+    public static void addSink(Sink sink) {
+        sSinks.addIfAbsent(sink);
+    }
+
+    public static void removeSink(Sink sink) {
+        sSinks.remove(sink);
+    }
+
+    public static boolean isEnabled() {
+        return !sSinks.isEmpty();
+    }
+
+    public static Span begin(String name) {
+        if (sSinks.isEmpty()) {
+            return NO_OP;
+        }
+        for (Sink sink : sSinks) {
+            sink.onBegin(name);
+        }
+        return new Span(name, System.nanoTime());
+    }
+}
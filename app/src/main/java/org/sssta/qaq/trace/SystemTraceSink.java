@@ -0,0 +1,19 @@
+package org.sssta.qaq.trace;
+
+import android.os.Trace;
+
+/**
+ * 转发到 {@link Trace}，用 systrace 抓取时和系统事件显示在同一条时间线上
+ */
+public class SystemTraceSink implements StageTracer.Sink {
+
+    @Override
+    public void onBegin(String name) {
+        Trace.beginSection(name);
+    }
+
+    @Override
+    public void onEnd(String name, long startNanos, long endNanos) {
+        Trace.endSection();
+    }
+}
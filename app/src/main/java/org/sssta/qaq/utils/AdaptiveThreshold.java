@@ -0,0 +1,125 @@
+package org.sssta.qaq.utils;
+
+import org.sssta.qaq.trace.StageTracer;
+
+/**
+ * Sauvola 局部自适应二值化。
+ *
+ * 先建亮度和亮度平方的积分图(summed-area table)，之后任意窗口的均值和方差都是 O(1)，
+ * 和窗口大小无关。建表和阈值化都按行/列带并行。
+ */
+public class AdaptiveThreshold {
+
+    public static final float DEFAULT_K = 0.2f;
+
+    /**
+     * 标准差的动态范围，8位灰度取128
+     */
+    private static final float DYNAMIC_RANGE = 128f;
+
+    private static final int BACKGROUND = 0x00ffffff;
+
+    /**
+     * 窗口半径按脸的宽度取比例，太小的窗口会把皮肤纹理也当成线条
+     */
+    public static int defaultRadius(int width, int height) {
+        return Math.max(4, Math.min(width, height) / 12);
+    }
+
+    /**
+     * 原地处理 ARGB 像素：高于局部阈值的像素变成白色背景，其余保留原灰度作为线条，alpha 不变
+     *
+     * @param pixels ARGB 像素
+     * @param radius 窗口半径，窗口边长为 2 * radius + 1
+     * @param k      Sauvola 系数，越大线条越少
+     */
+    public static void sauvola(int[] pixels, int width, int height, int radius, float k) {
+        StageTracer.Span span = StageTracer.begin("sauvola");
+        try {
+            threshold(pixels, width, height, radius, k);
+        } finally {
+            span.end();
+        }
+    }
+
+    private static void threshold(final int[] pixels, final int width, final int height,
+                                  final int radius, final float k) {
+        final int stride = width + 1;
+        final int[] luminance = new int[width * height];
+        // 8位亮度的行积分在 int 范围内，平方和需要 long
+        final int[] sum = new int[stride * (height + 1)];
+        final long[] sqSum = new long[stride * (height + 1)];
+
+        // 逐行前缀和，行之间互不依赖
+        TileExecutor.forEachBand(height, new TileExecutor.BandTask() {
+            @Override
+            public void run(int start, int end) {
+                for (int y = start; y < end; y++) {
+                    int rowSum = 0;
+                    long rowSqSum = 0;
+                    int offset = y * width;
+                    int satOffset = (y + 1) * stride + 1;
+                    for (int x = 0; x < width; x++) {
+                        int color = pixels[offset + x];
+                        int lum = (((color >> 16) & 0xff) * 77 + ((color >> 8) & 0xff) * 150
+                                + (color & 0xff) * 29) >> 8;
+                        luminance[offset + x] = lum;
+                        rowSum += lum;
+                        rowSqSum += lum * lum;
+                        sum[satOffset + x] = rowSum;
+                        sqSum[satOffset + x] = rowSqSum;
+                    }
+                }
+            }
+        });
+
+        // 逐列累加行前缀和，列之间互不依赖
+        TileExecutor.forEachBand(width, new TileExecutor.BandTask() {
+            @Override
+            public void run(int start, int end) {
+                for (int y = 2; y <= height; y++) {
+                    int row = y * stride;
+                    int prev = row - stride;
+                    for (int x = start + 1; x <= end; x++) {
+                        sum[row + x] += sum[prev + x];
+                        sqSum[row + x] += sqSum[prev + x];
+                    }
+                }
+            }
+        });
+
+        TileExecutor.forEachBand(height, new TileExecutor.BandTask() {
+            @Override
+            public void run(int start, int end) {
+                for (int y = start; y < end; y++) {
+                    int top = Math.max(0, y - radius) * stride;
+                    int bottom = (Math.min(height - 1, y + radius) + 1) * stride;
+                    int rows = bottom / stride - top / stride;
+                    int offset = y * width;
+                    for (int x = 0; x < width; x++) {
+                        int left = Math.max(0, x - radius);
+                        int right = Math.min(width - 1, x + radius) + 1;
+                        int area = rows * (right - left);
+
+                        int s = sum[bottom + right] - sum[bottom + left] - sum[top + right] + sum[top + left];
+                        long sq = sqSum[bottom + right] - sqSum[bottom + left]
+                                - sqSum[top + right] + sqSum[top + left];
+
+                        float mean = (float) s / area;
+                        float variance = Math.max(0f, (float) sq / area - mean * mean);
+                        float threshold = mean * (1 + k * ((float) Math.sqrt(variance) / DYNAMIC_RANGE - 1));
+
+                        int index = offset + x;
+                        int lum = luminance[index];
+                        int alpha = pixels[index] & 0xff000000;
+                        if (lum > threshold) {
+                            pixels[index] = alpha | BACKGROUND;
+                        } else {
+                            pixels[index] = alpha | lum << 16 | lum << 8 | lum;
+                        }
+                    }
+                }
+            }
+        });
+    }
+}
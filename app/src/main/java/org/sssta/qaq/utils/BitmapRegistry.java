@@ -0,0 +1,111 @@
+package org.sssta.qaq.utils;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.Random;
+
+/**
+ * 进程内的图片交接表，代替之前在 Activity 之间传递的静态 Bitmap。
+ *
+ * 生产方 {@link #register} 拿到一个 handle（引用计数为1）放进 Intent，
+ * 接收方 {@link #acquire} 后自己持有一份引用，不用时 {@link #release}，
+ * 最后一个引用释放时 Bitmap 被回收。
+ */
+public class BitmapRegistry {
+    private static final String TAG = BitmapRegistry.class.getSimpleName();
+
+    public static final String EXTRA_HANDLE = "asset";
+    public static final int NO_HANDLE = 0;
+
+    private static final SparseArray<Entry> sEntries = new SparseArray<>();
+    /**
+     * 每个进程从随机位置开始编号，进程被杀后 Intent 里留下的旧 handle 不会碰巧指向新登记的图片
+     */
+    private static int sNextHandle = new Random(SystemClock.elapsedRealtime()).nextInt(Integer.MAX_VALUE) + 1;
+    private static long sTotalBytes;
+
+    private static class Entry {
+        final Bitmap bitmap;
+        final long bytes;
+        int refCount = 1;
+
+        Entry(Bitmap bitmap) {
+            this.bitmap = bitmap;
+            this.bytes = bitmap.getByteCount();
+        }
+    }
+
+    /**
+     * 登记一张图片，调用方持有返回 handle 的第一份引用
+     */
+    public static synchronized int register(Bitmap bitmap) {
+        if (bitmap == null) {
+            throw new IllegalArgumentException("bitmap == null");
+        }
+        int handle = sNextHandle;
+        sNextHandle = sNextHandle == Integer.MAX_VALUE ? 1 : sNextHandle + 1;
+        Entry entry = new Entry(bitmap);
+        sEntries.put(handle, entry);
+        sTotalBytes += entry.bytes;
+        return handle;
+    }
+
+    /**
+     * 增加一份引用
+     *
+     * @return 对应的图片，handle 已失效（例如进程被杀后恢复）时返回 null
+     */
+    public static synchronized Bitmap acquire(int handle) {
+        Entry entry = sEntries.get(handle);
+        if (entry == null) {
+            return null;
+        }
+        entry.refCount++;
+        return entry.bitmap;
+    }
+
+    /**
+     * 只取图片，不改变引用计数，用于已经持有引用的一方
+     */
+    public static synchronized Bitmap peek(int handle) {
+        Entry entry = sEntries.get(handle);
+        return entry == null ? null : entry.bitmap;
+    }
+
+    /**
+     * 释放一份引用，最后一份释放时回收图片
+     */
+    public static synchronized void release(int handle) {
+        Entry entry = sEntries.get(handle);
+        if (entry == null) {
+            return;
+        }
+        if (--entry.refCount > 0) {
+            return;
+        }
+        sEntries.remove(handle);
+        sTotalBytes -= entry.bytes;
+        entry.bitmap.recycle();
+        Log.d(TAG, "released #" + handle + " " + entry.bytes + " bytes, live " + sTotalBytes);
+    }
+
+    public static synchronized int getRefCount(int handle) {
+        Entry entry = sEntries.get(handle);
+        return entry == null ? 0 : entry.refCount;
+    }
+
+    public static synchronized long getByteCount(int handle) {
+        Entry entry = sEntries.get(handle);
+        return entry == null ? 0 : entry.bytes;
+    }
+
+    /**
+     * 所有仍被引用的图片占用的字节数
+     */
+    public static synchronized long getTotalByteCount() {
+        return sTotalBytes;
+    }
+}
@@ -6,7 +6,10 @@ import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PorterDuff;
+import android.graphics.PointF;
 import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.media.FaceDetector;
 
 /**
  * Created by cauchywei on 15/11/21.
@@ -62,4 +65,39 @@ public class FaceUtils {
 
         return bitmap;
     }
+
+    /**
+     * 找出图片中第一张脸的取景框，没有脸时返回 null
+     *
+     * @param bitmap 必须是 RGB_565，宽度为奇数时去掉最后一列
+     */
+    public static Rect findFaceRect(Bitmap bitmap) {
+        Bitmap source = bitmap;
+        if ((bitmap.getWidth() & 1) != 0) {
+            source = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth() - 1, bitmap.getHeight());
+        }
+        FaceDetector faceDetector = new FaceDetector(source.getWidth(), source.getHeight(), 1);
+        FaceDetector.Face[] faces = new FaceDetector.Face[1];
+        int nFace = faceDetector.findFaces(source, faces);
+        if (source != bitmap) {
+            source.recycle();
+        }
+        if (nFace == 0) {
+            return null;
+        }
+
+        FaceDetector.Face face = faces[0];
+        int faceSize = (int) (face.eyesDistance() * 1.8);
+
+        PointF centerFace = new PointF();
+        face.getMidPoint(centerFace);
+
+        int initX = Math.max(0, (int) (centerFace.x - faceSize / 2));
+        int initY = Math.max(0, (int) (centerFace.y - faceSize / 2.3));
+
+        int endX = Math.min(initX + faceSize, bitmap.getWidth());
+        int endY = Math.min(initY + faceSize + faceSize / 7, bitmap.getHeight());
+
+        return new Rect((int) (initX - faceSize * 0.1), initY, (int) (endX - faceSize * 0.1), endY);
+    }
 }
@@ -0,0 +1,177 @@
+package org.sssta.qaq.utils;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.provider.MediaStore;
+
+import org.sssta.qaq.trace.StageTracer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 把图片直接写进系统图库。
+ *
+ * 先插入一行 MediaStore 记录，再把 JPEG 编码结果直接写进这一行的输出流，
+ * 只编码一次、写一次文件，不需要再 insertImage 和广播扫描。
+ * 涉及 IO，必须在后台线程调用，一般放在 {@link org.sssta.qaq.pipeline.Pipeline.Stage#ENCODE}。
+ */
+public class GalleryExporter {
+
+    public static final int JPEG_QUALITY = 100;
+
+    private static final String ALBUM = "QAQ";
+
+    // Android Q 新增的列，compileSdk 里还没有这两个常量
+    private static final String COLUMN_RELATIVE_PATH = "relative_path";
+    private static final String COLUMN_IS_PENDING = "is_pending";
+    private static final int VERSION_CODES_Q = 29;
+
+    /**
+     * 编码并写进图库
+     *
+     * @return 图库中的 content:// Uri
+     */
+    public static Uri exportJpeg(ContentResolver resolver, final Bitmap bitmap) throws IOException {
+        return export(resolver, bitmap.getWidth(), bitmap.getHeight(), new Writer() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                    throw new IOException("JPEG encode failed");
+                }
+            }
+        });
+    }
+
+    /**
+     * 已经编码好的 JPEG 直接写进图库
+     */
+    public static Uri exportJpeg(ContentResolver resolver, final byte[] jpeg,
+                                 int width, int height) throws IOException {
+        return export(resolver, width, height, new Writer() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(jpeg);
+            }
+        });
+    }
+
+    public static byte[] encodeJpeg(Bitmap bitmap) throws IOException {
+        StageTracer.Span span = StageTracer.begin(StageTracer.ENCODE);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bitmap.getWidth() * bitmap.getHeight() / 2);
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                throw new IOException("JPEG encode failed");
+            }
+            return out.toByteArray();
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * 图库里这一行是否还在，用户可能已经删掉了
+     */
+    public static boolean exists(ContentResolver resolver, Uri uri) {
+        Cursor cursor = resolver.query(uri, new String[]{MediaStore.Images.Media._ID}, null, null, null);
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 图库这一行对应的本地文件，行已经删掉或者文件读不到（比如 Android Q 以后的分区存储）时返回 null
+     */
+    public static String getPath(ContentResolver resolver, Uri uri) {
+        Cursor cursor = resolver.query(uri, new String[]{MediaStore.Images.Media.DATA}, null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        String path;
+        try {
+            path = cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+        return path != null && new File(path).canRead() ? path : null;
+    }
+
+    private interface Writer {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private static Uri export(ContentResolver resolver, int width, int height,
+                              Writer writer) throws IOException {
+        String fileName = "QAQ_" + System.currentTimeMillis() + ".jpg";
+        boolean scoped = Build.VERSION.SDK_INT >= VERSION_CODES_Q;
+
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.Images.Media.DISPLAY_NAME, fileName);
+        values.put(MediaStore.Images.Media.TITLE, fileName);
+        values.put(MediaStore.Images.Media.MIME_TYPE, "image/jpeg");
+        values.put(MediaStore.Images.Media.DATE_TAKEN, System.currentTimeMillis());
+        values.put(MediaStore.Images.Media.WIDTH, width);
+        values.put(MediaStore.Images.Media.HEIGHT, height);
+        if (scoped) {
+            values.put(COLUMN_RELATIVE_PATH, Environment.DIRECTORY_PICTURES + "/" + ALBUM);
+            values.put(COLUMN_IS_PENDING, 1);
+        } else {
+            // 和以前一样放在 /sdcard/QAQ 下
+            File appDir = new File(Environment.getExternalStorageDirectory(), ALBUM);
+            if (!appDir.exists() && !appDir.mkdirs()) {
+                throw new IOException("cannot create " + appDir);
+            }
+            values.put(MediaStore.Images.Media.DATA, new File(appDir, fileName).getAbsolutePath());
+        }
+
+        Uri uri;
+        StageTracer.Span insertSpan = StageTracer.begin(StageTracer.MEDIASTORE_INSERT);
+        try {
+            uri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+        } finally {
+            insertSpan.end();
+        }
+        if (uri == null) {
+            throw new IOException("MediaStore insert failed");
+        }
+
+        boolean written = false;
+        StageTracer.Span encodeSpan = StageTracer.begin(StageTracer.ENCODE);
+        try {
+            OutputStream out = resolver.openOutputStream(uri);
+            if (out == null) {
+                throw new IOException("cannot open " + uri);
+            }
+            try {
+                writer.writeTo(out);
+            } finally {
+                out.close();
+            }
+            written = true;
+        } finally {
+            encodeSpan.end();
+            if (!written) {
+                resolver.delete(uri, null, null);
+            }
+        }
+
+        if (scoped) {
+            ContentValues published = new ContentValues();
+            published.put(COLUMN_IS_PENDING, 0);
+            resolver.update(uri, published, null, null);
+        }
+        return uri;
+    }
+}
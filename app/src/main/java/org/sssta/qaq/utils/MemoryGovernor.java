@@ -0,0 +1,187 @@
+package org.sssta.qaq.utils;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * 统计全进程存活的 Bitmap 字节数，超出预算或系统要求回收内存时按优先级让各组件释放。
+ *
+ * 产生 Bitmap 的组件实现 {@link Client} 并 {@link #register}，
+ * 分配大图前调用 {@link #reserve} 预留空间，图交给 Client 持有或者不再分配后用 {@link #release} 归还。
+ * 回收回调都在主线程执行。
+ * 预算默认取 {@link ActivityManager#getMemoryClass()} 的一部分。
+ */
+public class MemoryGovernor implements ComponentCallbacks2 {
+    private static final String TAG = MemoryGovernor.class.getSimpleName();
+
+    /**
+     * 随时可以丢弃并重建的缓存
+     */
+    public static final int PRIORITY_CACHE = 0;
+    /**
+     * 界面不可见时可以丢弃，回到前台再重建
+     */
+    public static final int PRIORITY_HIDDEN = 1;
+    /**
+     * 正在显示，不会被要求释放
+     */
+    public static final int PRIORITY_VISIBLE = 2;
+
+    public static final float DEFAULT_BUDGET_FRACTION = 0.4f;
+
+    private static MemoryGovernor sInstance;
+
+    private final int mMemoryClass;
+    private long mBudgetBytes;
+    /**
+     * 已经预留、还没有算进任何 Client 的字节数
+     */
+    private long mReservedBytes;
+    private final Set<Client> mClients = Collections.newSetFromMap(new WeakHashMap<Client, Boolean>());
+
+    public interface Client {
+        /**
+         * 当前持有的 Bitmap 字节数
+         */
+        long getBitmapByteCount();
+
+        int getTrimPriority();
+
+        /**
+         * 释放所有能重建的 Bitmap，在主线程调用
+         *
+         * @return 释放的字节数
+         */
+        long trimBitmaps();
+    }
+
+    public static synchronized MemoryGovernor get(Context context) {
+        if (sInstance == null) {
+            ActivityManager am = (ActivityManager) context.getApplicationContext()
+                    .getSystemService(Context.ACTIVITY_SERVICE);
+            sInstance = new MemoryGovernor(am.getMemoryClass());
+        }
+        return sInstance;
+    }
+
+    private MemoryGovernor(int memoryClass) {
+        mMemoryClass = memoryClass;
+        setBudgetFraction(DEFAULT_BUDGET_FRACTION);
+    }
+
+    /**
+     * @param fraction 预算占 memoryClass 的比例
+     */
+    public synchronized void setBudgetFraction(float fraction) {
+        mBudgetBytes = (long) (mMemoryClass * 1024L * 1024L * fraction);
+    }
+
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        mBudgetBytes = budgetBytes;
+    }
+
+    public synchronized long getBudgetBytes() {
+        return mBudgetBytes;
+    }
+
+    public synchronized void register(Client client) {
+        mClients.add(client);
+    }
+
+    public synchronized void unregister(Client client) {
+        mClients.remove(client);
+    }
+
+    /**
+     * 所有组件加上 {@link BitmapRegistry} 中的图片
+     */
+    public synchronized long getLiveBytes() {
+        long bytes = BitmapRegistry.getTotalByteCount();
+        for (Client client : mClients) {
+            bytes += client.getBitmapByteCount();
+        }
+        return bytes;
+    }
+
+    /**
+     * 准备分配 bytes 字节前在主线程调用，超出预算时先按优先级回收。
+     * 成功后这些字节一直算在预算里，直到调用 {@link #release}
+     *
+     * @return 回收后是否能放进预算，放不下时不预留
+     */
+    public synchronized boolean reserve(long bytes) {
+        long excess = getLiveBytes() + mReservedBytes + bytes - mBudgetBytes;
+        if (excess > 0) {
+            excess -= trim(PRIORITY_HIDDEN, excess);
+        }
+        if (excess > 0) {
+            Log.w(TAG, "over budget by " + excess + " bytes, budget " + mBudgetBytes
+                    + ", reserved " + mReservedBytes);
+            return false;
+        }
+        mReservedBytes += bytes;
+        return true;
+    }
+
+    /**
+     * 归还 {@link #reserve} 成功预留的字节数。分配出的图已经算进某个 Client，
+     * 或者任务取消、失败不再分配时调用，可以在任意线程调用
+     */
+    public synchronized void release(long bytes) {
+        mReservedBytes = Math.max(0, mReservedBytes - bytes);
+    }
+
+    /**
+     * 从最低优先级开始回收，直到释放够 bytesToFree
+     *
+     * @param maxPriority 只回收不高于这个优先级的组件
+     * @return 实际释放的字节数
+     */
+    private long trim(int maxPriority, long bytesToFree) {
+        List<Client> clients = new ArrayList<>(mClients);
+        long freed = 0;
+        for (int priority = PRIORITY_CACHE; priority <= maxPriority && freed < bytesToFree; priority++) {
+            for (Client client : clients) {
+                if (freed >= bytesToFree) {
+                    break;
+                }
+                if (client.getTrimPriority() == priority && client.getBitmapByteCount() > 0) {
+                    freed += client.trimBitmaps();
+                }
+            }
+        }
+        return freed;
+    }
+
+    @Override
+    public synchronized void onTrimMemory(int level) {
+        long freed;
+        if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            freed = trim(PRIORITY_HIDDEN, Long.MAX_VALUE);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            freed = trim(PRIORITY_CACHE, Long.MAX_VALUE);
+        } else {
+            // TRIM_MEMORY_RUNNING_MODERATE，缓存降到预算的一半
+            freed = trim(PRIORITY_CACHE, getLiveBytes() - mBudgetBytes / 2);
+        }
+        Log.d(TAG, "onTrimMemory " + level + " freed " + freed + " bytes, live " + getLiveBytes());
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
@@ -0,0 +1,166 @@
+package org.sssta.qaq.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分享图的缓存，key 由合成输入（脸、模板、变换参数）哈希得到。
+ *
+ * 编码好的 JPEG 放在内存里，轮播停下后就可以提前编码；
+ * 已经写进图库的 Uri 记在 SharedPreferences 里，同样的合成再分享时直接复用，不会产生重复文件，
+ * 最多记 {@link #MAX_URIS} 条，超出时丢掉最早写入的。
+ * 所有方法线程安全。
+ */
+public class ShareCache {
+
+    public static final int DEFAULT_JPEG_CACHE_BYTES = 4 * 1024 * 1024;
+
+    public static final int MAX_URIS = 64;
+
+    private static final String PREFS_NAME = "share_cache";
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static ShareCache sInstance;
+
+    private final SharedPreferences mPrefs;
+    private final LruCache<Long, byte[]> mJpegs;
+
+    public static synchronized ShareCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new ShareCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ShareCache(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mJpegs = new LruCache<Long, byte[]>(DEFAULT_JPEG_CACHE_BYTES) {
+            @Override
+            protected int sizeOf(Long key, byte[] value) {
+                return value.length;
+            }
+        };
+    }
+
+    /**
+     * 图片内容的 FNV-1a 哈希，用来标识脸，不依赖进程内的 handle。要读所有像素，不要在主线程调用
+     */
+    public static long hashPixels(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] row = new int[width];
+        long hash = mix(mix(FNV_OFFSET, width), height);
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                hash = mix(hash, row[x]);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * 合成图的 key
+     *
+     * @param faceHash     {@link #hashPixels} 的结果
+     * @param templateName 模板的资源名，资源 id 每次编译都可能变
+     */
+    public static long key(long faceHash, String templateName, float angle,
+                           int left, int top, int width, int height) {
+        long hash = mix(FNV_OFFSET, (int) faceHash);
+        hash = mix(hash, (int) (faceHash >>> 32));
+        for (int i = 0; i < templateName.length(); i++) {
+            hash = mix(hash, templateName.charAt(i));
+        }
+        hash = mix(hash, Float.floatToIntBits(angle));
+        hash = mix(hash, left);
+        hash = mix(hash, top);
+        hash = mix(hash, width);
+        return mix(hash, height);
+    }
+
+    private static long mix(long hash, int value) {
+        for (int i = 0; i < 4; i++) {
+            hash ^= value & 0xff;
+            hash *= FNV_PRIME;
+            value >>>= 8;
+        }
+        return hash;
+    }
+
+    public byte[] getJpeg(long key) {
+        return mJpegs.get(key);
+    }
+
+    public void putJpeg(long key, byte[] jpeg) {
+        mJpegs.put(key, jpeg);
+    }
+
+    /**
+     * @return 之前写进图库的 Uri，调用方需要确认它还存在
+     */
+    public Uri getUri(long key) {
+        String value = mPrefs.getString(Long.toHexString(key), null);
+        return value == null ? null : Uri.parse(value.substring(value.indexOf(' ') + 1));
+    }
+
+    /**
+     * 记下 Uri，值前面带写入时间，超出 {@link #MAX_URIS} 条时删掉最早的
+     */
+    public synchronized void putUri(long key, Uri uri) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        Map<String, ?> all = mPrefs.getAll();
+        String name = Long.toHexString(key);
+        int excess = all.size() + (all.containsKey(name) ? 0 : 1) - MAX_URIS;
+        if (excess > 0) {
+            List<Map.Entry<String, ?>> entries = new ArrayList<Map.Entry<String, ?>>(all.entrySet());
+            Collections.sort(entries, new Comparator<Map.Entry<String, ?>>() {
+                @Override
+                public int compare(Map.Entry<String, ?> a, Map.Entry<String, ?> b) {
+                    long ta = writeTime(a.getValue());
+                    long tb = writeTime(b.getValue());
+                    return ta < tb ? -1 : (ta == tb ? 0 : 1);
+                }
+            });
+            for (int i = 0; i < excess; i++) {
+                editor.remove(entries.get(i).getKey());
+            }
+        }
+        editor.putString(name, System.currentTimeMillis() + " " + uri.toString()).apply();
+    }
+
+    private static long writeTime(Object value) {
+        String s = String.valueOf(value);
+        int space = s.indexOf(' ');
+        if (space <= 0) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(s.substring(0, space));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 图库里的文件已经被删掉时调用
+     */
+    public void removeUri(long key) {
+        mPrefs.edit().remove(Long.toHexString(key)).apply();
+    }
+
+    public void trimJpegs() {
+        mJpegs.evictAll();
+    }
+}
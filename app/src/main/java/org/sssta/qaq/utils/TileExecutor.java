@@ -0,0 +1,105 @@
+package org.sssta.qaq.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 把逐像素的滤镜按行带(band)切开并行执行。
+ *
+ * 调用线程自己也会处理一个band，所以在单核设备上不会比串行慢。
+ */
+public class TileExecutor {
+
+    /**
+     * 小于这个数量的行/列不值得切分
+     */
+    private static final int MIN_BAND_SIZE = 16;
+
+    private static final int THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static ExecutorService sPool;
+
+    public interface BandTask {
+        /**
+         * 处理 [start, end) 区间
+         */
+        void run(int start, int end);
+    }
+
+    public static int getThreadCount() {
+        return THREAD_COUNT;
+    }
+
+    /**
+     * 把 [0, count) 切成若干连续区间并行执行，所有区间完成后才返回
+     */
+    public static void forEachBand(int count, BandTask task) {
+        int bands = Math.min(THREAD_COUNT, count / MIN_BAND_SIZE);
+        if (bands <= 1) {
+            task.run(0, count);
+            return;
+        }
+
+        int bandSize = (count + bands - 1) / bands;
+        List<Future<?>> futures = new ArrayList<>(bands - 1);
+        ExecutorService pool = getPool();
+        for (int start = bandSize; start < count; start += bandSize) {
+            futures.add(pool.submit(new BandRunnable(task, start, Math.min(count, start + bandSize))));
+        }
+        task.run(0, Math.min(count, bandSize));
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("band interrupted", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getPool() {
+        if (sPool == null) {
+            sPool = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "qaq-tile-" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sPool;
+    }
+
+    private static class BandRunnable implements Runnable {
+        private final BandTask mTask;
+        private final int mStart;
+        private final int mEnd;
+
+        BandRunnable(BandTask task, int start, int end) {
+            mTask = task;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        public void run() {
+            mTask.run(mStart, mEnd);
+        }
+    }
+}
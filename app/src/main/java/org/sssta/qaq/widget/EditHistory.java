@@ -0,0 +1,265 @@
+package org.sssta.qaq.widget;
+
+/**
+ * 贴纸和文字编辑的撤销、重做记录。
+ *
+ * 每一步只记一条基本命令：变换增量、层级调整、增删对象或修改文字，存在定长的环形数组里，
+ * 不含文字时每步 1 字节操作 + 4 字节对象 id + {@link #ARGS} 个 float，约 30 字节。
+ * 命令只记正向参数，不需要能求逆：撤销时回到不晚于目标位置的最近检查点，再重放之后的命令。
+ * 检查点每 {@link #CHECKPOINT_INTERVAL} 步由 {@link Target#saveState()} 生成一次，
+ * 所以跳多少步都最多重放这么多条命令，浮点误差也不会随历史变长而累积。
+ * 环满后整段丢弃最旧的 {@link #CHECKPOINT_INTERVAL} 步，最旧的位置上总有检查点。
+ *
+ * 只在主线程使用，不依赖 Android 类。
+ */
+public class EditHistory {
+
+    /**
+     * 变换增量，参数含义由 {@link Target} 决定
+     */
+    public static final byte OP_TRANSFORM = 1;
+    /**
+     * 移动到层级 args[0]
+     */
+    public static final byte OP_REORDER = 2;
+    /**
+     * 加入对象，参数是初始变换
+     */
+    public static final byte OP_ADD = 3;
+    public static final byte OP_REMOVE = 4;
+    public static final byte OP_TEXT = 5;
+
+    public static final int ARGS = 6;
+    public static final int CHECKPOINT_INTERVAL = 32;
+    public static final int DEFAULT_CAPACITY = 512;
+
+    public interface Target {
+        /**
+         * 完整的编辑状态，用作检查点，之后不能再被修改
+         */
+        Object saveState();
+
+        void restoreState(Object state);
+
+        /**
+         * 重放一条命令
+         *
+         * @param args   从 offset 开始的 {@link #ARGS} 个参数
+         * @param text   {@link #OP_TEXT} 的新文字，其余为 null
+         */
+        void apply(byte op, int id, float[] args, int offset, String text);
+    }
+
+    public interface OnTrimListener {
+        /**
+         * 环满丢掉最旧的一段、或者 {@link #clear()} 之后调用。之后只有 oldest 这个检查点里的对象
+         * 和 {@link #isReferenced} 的对象还可能被撤销或重做回来，其余对象 Target 可以忘掉
+         */
+        void onTrimmed(Object oldest);
+    }
+
+    private final Target mTarget;
+    private final int mCapacity;
+
+    private final byte[] mOps;
+    private final int[] mIds;
+    private final float[] mArgs;
+    private final String[] mTexts;
+    /**
+     * 第 k 个检查点位置的状态，位置是 CHECKPOINT_INTERVAL 的倍数
+     */
+    private final Object[] mCheckpoints;
+
+    /**
+     * 绝对位置：最旧可撤销到的位置、当前位置、记录的末尾
+     */
+    private long mStart;
+    private long mCursor;
+    private long mEnd;
+    private boolean mReplaying;
+    private OnTrimListener mOnTrimListener;
+
+    public EditHistory(Target target) {
+        this(target, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity 最多保留的步数，会向上取整到 CHECKPOINT_INTERVAL 的倍数
+     */
+    public EditHistory(Target target, int capacity) {
+        mTarget = target;
+        int blocks = Math.max(1, (capacity + CHECKPOINT_INTERVAL - 1) / CHECKPOINT_INTERVAL);
+        mCapacity = blocks * CHECKPOINT_INTERVAL;
+        mOps = new byte[mCapacity];
+        mIds = new int[mCapacity];
+        mArgs = new float[mCapacity * ARGS];
+        mTexts = new String[mCapacity];
+        mCheckpoints = new Object[blocks + 1];
+        mCheckpoints[0] = target.saveState();
+    }
+
+    /**
+     * 丢掉所有记录，以当前状态作为新的起点
+     */
+    public void clear() {
+        mStart = 0;
+        mCursor = 0;
+        mEnd = 0;
+        for (int i = 0; i < mCapacity; i++) {
+            mTexts[i] = null;
+        }
+        for (int i = 0; i < mCheckpoints.length; i++) {
+            mCheckpoints[i] = null;
+        }
+        mCheckpoints[0] = mTarget.saveState();
+        if (mOnTrimListener != null) {
+            mOnTrimListener.onTrimmed(mCheckpoints[0]);
+        }
+    }
+
+    public void setOnTrimListener(OnTrimListener listener) {
+        mOnTrimListener = listener;
+    }
+
+    /**
+     * 可以撤销或重做的命令里是否用到了 id
+     */
+    public boolean isReferenced(int id) {
+        for (long p = mStart; p < mEnd; p++) {
+            if (mIds[slot(p)] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 重放过程中 Target 自己触发的记录会被忽略
+     */
+    public boolean isReplaying() {
+        return mReplaying;
+    }
+
+    public boolean canUndo() {
+        return mCursor > mStart;
+    }
+
+    public boolean canRedo() {
+        return mCursor < mEnd;
+    }
+
+    /**
+     * 可撤销的步数
+     */
+    public int getUndoCount() {
+        return (int) (mCursor - mStart);
+    }
+
+    public int getRedoCount() {
+        return (int) (mEnd - mCursor);
+    }
+
+    public void record(byte op, int id) {
+        record(op, id, 0, 0, 0, 0, 0, 0, null);
+    }
+
+    public void record(byte op, int id, float a0, float a1, float a2, float a3, float a4, float a5) {
+        record(op, id, a0, a1, a2, a3, a4, a5, null);
+    }
+
+    public void recordText(int id, String text) {
+        record(OP_TEXT, id, 0, 0, 0, 0, 0, 0, text);
+    }
+
+    /**
+     * 记录一条已经作用到 Target 上的命令，会清掉可以重做的部分
+     */
+    private void record(byte op, int id, float a0, float a1, float a2, float a3, float a4, float a5,
+                        String text) {
+        if (mReplaying) {
+            return;
+        }
+        for (long p = mCursor; p < mEnd; p++) {
+            mTexts[slot(p)] = null;
+        }
+        mEnd = mCursor;
+        boolean trimmed = mEnd - mStart == mCapacity;
+        if (trimmed) {
+            // 整段丢掉最旧的一块，新的起点正好是下一个检查点
+            mCheckpoints[checkpointSlot(mStart)] = null;
+            for (long p = mStart; p < mStart + CHECKPOINT_INTERVAL; p++) {
+                mTexts[slot(p)] = null;
+            }
+            mStart += CHECKPOINT_INTERVAL;
+        }
+        int slot = slot(mEnd);
+        mOps[slot] = op;
+        mIds[slot] = id;
+        int offset = slot * ARGS;
+        mArgs[offset] = a0;
+        mArgs[offset + 1] = a1;
+        mArgs[offset + 2] = a2;
+        mArgs[offset + 3] = a3;
+        mArgs[offset + 4] = a4;
+        mArgs[offset + 5] = a5;
+        mTexts[slot] = text;
+        mEnd++;
+        mCursor = mEnd;
+        if (mEnd % CHECKPOINT_INTERVAL == 0) {
+            mCheckpoints[checkpointSlot(mEnd)] = mTarget.saveState();
+        }
+        // 新命令写进去以后再通知，它用到的对象还要留着
+        if (trimmed && mOnTrimListener != null) {
+            mOnTrimListener.onTrimmed(mCheckpoints[checkpointSlot(mStart)]);
+        }
+    }
+
+    public boolean undo() {
+        if (!canUndo()) {
+            return false;
+        }
+        seek(mCursor - 1);
+        return true;
+    }
+
+    public boolean redo() {
+        if (!canRedo()) {
+            return false;
+        }
+        seek(mCursor + 1);
+        return true;
+    }
+
+    /**
+     * 跳到往前（负数）或往后数 steps 步的位置，超出范围时停在两端
+     */
+    public void move(int steps) {
+        seek(Math.max(mStart, Math.min(mEnd, mCursor + steps)));
+    }
+
+    private void seek(long target) {
+        mReplaying = true;
+        try {
+            long from = mCursor;
+            if (target < mCursor) {
+                from = target - target % CHECKPOINT_INTERVAL;
+                mTarget.restoreState(mCheckpoints[checkpointSlot(from)]);
+            }
+            for (long p = from; p < target; p++) {
+                int slot = slot(p);
+                mTarget.apply(mOps[slot], mIds[slot], mArgs, slot * ARGS, mTexts[slot]);
+            }
+            mCursor = target;
+        } finally {
+            mReplaying = false;
+        }
+    }
+
+    private int slot(long position) {
+        return (int) (position % mCapacity);
+    }
+
+    private int checkpointSlot(long position) {
+        return (int) (position / CHECKPOINT_INTERVAL % mCheckpoints.length);
+    }
+}
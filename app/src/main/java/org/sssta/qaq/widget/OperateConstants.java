@@ -1,18 +0,0 @@
-package org.sssta.qaq.widget;
-
-public class OperateConstants {
-	/**
-	 * 本地字体名称
-	 */
-	public static final String FACE_BY = "by3500";
-	public static final String FACE_BYGF = "bygf3500";
-	/**
-	 * 水印或文字默认的位置
-	 */
-	public static final int LEFTTOP = 1;
-	public static final int RIGHTTOP = 2;
-	public static final int RIGHTBOTTOM = 3;
-	public static final int LEFTBOTTOM = 4;
-	
-
-}
@@ -0,0 +1,750 @@
+package org.sssta.qaq.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PointF;
+import android.graphics.Rect;
+import android.support.v4.view.MotionEventCompat;
+import android.util.AttributeSet;
+import android.util.SparseArray;
+import android.view.MotionEvent;
+import android.view.View;
+
+import org.sssta.qaq.R;
+import org.sssta.qaq.utils.MemoryGovernor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 多层贴纸合成视图，取代原来每张贴纸一个全屏的 StickerView。
+ *
+ * 图层按添加顺序从下到上排列。当前编辑的图层以下、以上的其余图层分别压平成一张缓存图，
+ * 每帧只画两张缓存、当前图层和它的控制按钮，贴纸再多每帧的开销也基本不变；
+ * 切换当前图层、增删或调整顺序时才重建缓存。触摸时一次从上到下遍历所有图层做命中测试。
+ *
+ * 每次手势结束记一条变换增量，增删和置顶各记一条，都存进 {@link EditHistory}，可以撤销和重做。
+ */
+public class StickerCompositorView extends View implements MemoryGovernor.Client {
+
+    private static final int MODE_NONE = 0;
+    private static final int MODE_DRAG = 1;
+    private static final int MODE_ROTATE_SCALE = 2;
+    private static final int MODE_PINCH = 3;
+
+    //手指移动距离必须超过这个数值
+    private static final float POINTER_LIMIT_DIS = 20f;
+    //拉伸按钮四周额外的触摸范围
+    private static final int RESIZE_SLOP = 20;
+
+    public interface OnLayerChangeListener {
+        void onLayerSelected(StickerLayer layer);
+
+        void onLayerRemoved(StickerLayer layer);
+
+        void onLayerTop(StickerLayer layer);
+    }
+
+    private final ArrayList<StickerLayer> mLayers = new ArrayList<>();
+    private StickerLayer mActive;
+    private OnLayerChangeListener mListener;
+
+    /**
+     * 加过的所有图层，按 id 索引，撤销删除时从这里找回
+     */
+    private final SparseArray<StickerLayer> mLayerIds = new SparseArray<>();
+    private int mNextId;
+    private EditHistory mHistory;
+    /**
+     * 正在拖动、旋转或缩放的图层，以及手势开始时它的矩阵
+     */
+    private StickerLayer mGestureLayer;
+    private final Matrix mGestureStart = new Matrix();
+    private final Matrix mDelta = new Matrix();
+    private final float[] mValues = new float[9];
+
+    private Bitmap mBelowCache;
+    private Bitmap mAboveCache;
+    /**
+     * 重建缓存时当前图层的位置，没有当前图层时等于图层数
+     */
+    private int mActiveIndex;
+    private boolean mCachesValid;
+    /**
+     * 正在重建缓存，这期间不响应裁剪
+     */
+    private boolean mRebuilding;
+    private final Canvas mCacheCanvas = new Canvas();
+
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint mFramePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private Bitmap mDeleteBitmap;
+    private Bitmap mResizeBitmap;
+    private Bitmap mFlipBitmap;
+    private Bitmap mTopBitmap;
+    private final Rect mDeleteRect = new Rect();
+    private final Rect mResizeRect = new Rect();
+    private final Rect mFlipRect = new Rect();
+    private final Rect mTopRect = new Rect();
+    /**
+     * 当前图层连同边框和按钮的包围盒
+     */
+    private final Rect mActiveBounds = new Rect();
+    private final Rect mDirty = new Rect();
+
+    private int mMode = MODE_NONE;
+    private float mLastX;
+    private float mLastY;
+    private float mLastDistance;
+    private final PointF mCenter = new PointF();
+
+    private int mScreenWidth;
+
+    public StickerCompositorView(Context context) {
+        super(context);
+        init();
+    }
+
+    public StickerCompositorView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public StickerCompositorView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        mFramePaint.setColor(Color.parseColor("#e73a3d"));
+        mFramePaint.setStyle(Paint.Style.STROKE);
+        mFramePaint.setStrokeWidth(2.0f);
+        mDeleteBitmap = BitmapFactory.decodeResource(getResources(), R.mipmap.icon_delete);
+        mResizeBitmap = BitmapFactory.decodeResource(getResources(), R.mipmap.icon_resize);
+        mFlipBitmap = BitmapFactory.decodeResource(getResources(), R.mipmap.icon_flip);
+        mTopBitmap = BitmapFactory.decodeResource(getResources(), R.mipmap.icon_top_enable);
+        mScreenWidth = getResources().getDisplayMetrics().widthPixels;
+        HistoryTarget target = new HistoryTarget();
+        mHistory = new EditHistory(target);
+        mHistory.setOnTrimListener(target);
+    }
+
+    public void setOnLayerChangeListener(OnLayerChangeListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 从下到上的图层，只读
+     */
+    public List<StickerLayer> getLayers() {
+        return Collections.unmodifiableList(mLayers);
+    }
+
+    public StickerLayer getActiveLayer() {
+        return mActive;
+    }
+
+    /**
+     * 放在最上层并设为当前图层，初始缩放取允许范围的中间，中心放在 (屏幕宽/2, 屏幕宽/2)
+     */
+    public void addLayer(StickerLayer layer) {
+        float size = Math.max(layer.getWidth(), layer.getHeight());
+        //缩放大小根据图片的大小而改变 最小为屏幕宽的1/8 最大为屏幕宽
+        float minSize = mScreenWidth / 8;
+        layer.mMinScale = size < minSize ? 1f : minSize / size;
+        layer.mMaxScale = size > mScreenWidth ? 1f : mScreenWidth / size;
+        float initScale = (layer.mMinScale + layer.mMaxScale) / 2;
+        float w = layer.getWidth();
+        float h = layer.getHeight();
+        layer.mMatrix.reset();
+        layer.mMatrix.postScale(initScale, initScale, w / 2, h / 2);
+        layer.mMatrix.postTranslate(mScreenWidth / 2 - w / 2, mScreenWidth / 2 - h / 2);
+        layer.updateGeometry();
+        layer.mId = mNextId++;
+        mLayerIds.put(layer.mId, layer);
+        mLayers.add(layer);
+        setActiveLayer(layer);
+        layer.mMatrix.getValues(mValues);
+        mHistory.record(EditHistory.OP_ADD, layer.mId,
+                mValues[0], mValues[1], mValues[2], mValues[3], mValues[4], mValues[5]);
+    }
+
+    public void removeLayer(StickerLayer layer) {
+        if (!mLayers.remove(layer)) {
+            return;
+        }
+        layer.releaseRaster();
+        if (mActive == layer) {
+            mActive = null;
+            mMode = MODE_NONE;
+            mGestureLayer = null;
+        }
+        invalidateCaches();
+        mHistory.record(EditHistory.OP_REMOVE, layer.mId);
+    }
+
+    public void bringToFront(StickerLayer layer) {
+        if (mLayers.remove(layer)) {
+            mLayers.add(layer);
+            invalidateCaches();
+            mHistory.record(EditHistory.OP_REORDER, layer.mId, mLayers.size() - 1, 0, 0, 0, 0, 0);
+        }
+    }
+
+    public boolean canUndo() {
+        return mHistory.canUndo();
+    }
+
+    public boolean canRedo() {
+        return mHistory.canRedo();
+    }
+
+    public boolean undo() {
+        if (!mHistory.undo()) {
+            return false;
+        }
+        onHistoryMoved();
+        return true;
+    }
+
+    public boolean redo() {
+        if (!mHistory.redo()) {
+            return false;
+        }
+        onHistoryMoved();
+        return true;
+    }
+
+    /**
+     * 清空撤销记录，当前状态作为新的起点，已经移除的图层不再保留
+     */
+    public void clearHistory() {
+        mHistory.clear();
+    }
+
+    /**
+     * 撤销或重做之后同步缓存图、当前图层和按钮位置
+     */
+    private void onHistoryMoved() {
+        mMode = MODE_NONE;
+        mGestureLayer = null;
+        for (int i = 0; i < mLayerIds.size(); i++) {
+            StickerLayer layer = mLayerIds.valueAt(i);
+            if (mLayers.contains(layer)) {
+                layer.updateGeometry();
+                layer.updateRaster();
+            } else {
+                layer.releaseRaster();
+            }
+        }
+        if (mActive != null && !mLayers.contains(mActive)) {
+            mActive = null;
+        }
+        if (mActive != null) {
+            updateControls();
+        }
+        invalidateCaches();
+    }
+
+    /**
+     * 手势结束时把起止矩阵之差记成一条变换增量
+     */
+    private void recordGesture() {
+        StickerLayer layer = mGestureLayer;
+        mGestureLayer = null;
+        if (layer == null || layer.mMatrix.equals(mGestureStart)) {
+            return;
+        }
+        // 结束 = 增量 × 开始
+        mGestureStart.invert(mDelta);
+        mDelta.postConcat(layer.mMatrix);
+        recordTransform(layer, mDelta);
+    }
+
+    private void recordTransform(StickerLayer layer, Matrix delta) {
+        delta.getValues(mValues);
+        mHistory.record(EditHistory.OP_TRANSFORM, layer.mId,
+                mValues[0], mValues[1], mValues[2], mValues[3], mValues[4], mValues[5]);
+    }
+
+    private void startGesture() {
+        if (mGestureLayer == null) {
+            mGestureLayer = mActive;
+            mGestureStart.set(mActive.mMatrix);
+        }
+    }
+
+    /**
+     * 设置处于编辑模式的图层，null 表示都不编辑
+     */
+    public void setActiveLayer(StickerLayer layer) {
+        if (mActive == layer) {
+            return;
+        }
+        mActive = layer;
+        if (layer != null) {
+            updateControls();
+        }
+        invalidateCaches();
+    }
+
+    private void invalidateCaches() {
+        mCachesValid = false;
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        releaseCaches();
+        mCachesValid = false;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        MemoryGovernor.get(getContext()).register(this);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        MemoryGovernor.get(getContext()).unregister(this);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (!mCachesValid) {
+            rebuildCaches();
+        }
+        if (mBelowCache != null) {
+            canvas.drawBitmap(mBelowCache, 0, 0, null);
+        } else {
+            drawLayers(canvas, 0, mActiveIndex);
+        }
+        if (mActive != null) {
+            mActive.draw(canvas, mBitmapPaint);
+        }
+        if (mAboveCache != null) {
+            canvas.drawBitmap(mAboveCache, 0, 0, null);
+        } else {
+            drawLayers(canvas, mActiveIndex + 1, mLayers.size());
+        }
+        if (mActive != null) {
+            // 按钮画在最上面，被别的贴纸挡住也能点到
+            float[] quad = mActive.mQuad;
+            canvas.drawLine(quad[0], quad[1], quad[2], quad[3], mFramePaint);
+            canvas.drawLine(quad[2], quad[3], quad[4], quad[5], mFramePaint);
+            canvas.drawLine(quad[4], quad[5], quad[6], quad[7], mFramePaint);
+            canvas.drawLine(quad[6], quad[7], quad[0], quad[1], mFramePaint);
+            canvas.drawBitmap(mDeleteBitmap, null, mDeleteRect, null);
+            canvas.drawBitmap(mResizeBitmap, null, mResizeRect, null);
+            canvas.drawBitmap(mFlipBitmap, null, mFlipRect, null);
+            canvas.drawBitmap(mTopBitmap, null, mTopRect, null);
+        }
+    }
+
+    /**
+     * 把当前图层以下和以上的图层分别压平
+     */
+    private void rebuildCaches() {
+        mActiveIndex = mActive == null ? mLayers.size() : mLayers.indexOf(mActive);
+        // flatten 里的 reserve 可能回头裁剪自己，把刚压好的缓存和图层光栅都丢掉
+        mRebuilding = true;
+        try {
+            mBelowCache = flatten(mBelowCache, 0, mActiveIndex);
+            mAboveCache = flatten(mAboveCache, mActiveIndex + 1, mLayers.size());
+        } finally {
+            mRebuilding = false;
+        }
+        mCachesValid = true;
+    }
+
+    private void drawLayers(Canvas canvas, int from, int to) {
+        for (int i = from; i < to; i++) {
+            mLayers.get(i).draw(canvas, mBitmapPaint);
+        }
+    }
+
+    /**
+     * @return 画好的缓存，范围内没有图层或内存不够时返回 null
+     */
+    private Bitmap flatten(Bitmap cache, int from, int to) {
+        int width = getWidth();
+        int height = getHeight();
+        if (from >= to || width == 0 || height == 0) {
+            recycle(cache);
+            return null;
+        }
+        if (cache != null && cache.getWidth() == width && cache.getHeight() == height) {
+            cache.eraseColor(Color.TRANSPARENT);
+        } else {
+            recycle(cache);
+            MemoryGovernor governor = MemoryGovernor.get(getContext());
+            long bytes = width * height * 4L;
+            if (!governor.reserve(bytes)) {
+                // 压平不了就在 onDraw 里逐层绘制
+                return null;
+            }
+            try {
+                cache = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            } finally {
+                // 调用方马上把它存成缓存，之后由 getBitmapByteCount 统计
+                governor.release(bytes);
+            }
+        }
+        mCacheCanvas.setBitmap(cache);
+        drawLayers(mCacheCanvas, from, to);
+        mCacheCanvas.setBitmap(null);
+        return cache;
+    }
+
+    private static void recycle(Bitmap bitmap) {
+        if (bitmap != null) {
+            bitmap.recycle();
+        }
+    }
+
+    private void releaseCaches() {
+        recycle(mBelowCache);
+        recycle(mAboveCache);
+        mBelowCache = null;
+        mAboveCache = null;
+    }
+
+    /**
+     * 当前图层的矩阵改变后调用，只重绘新旧包围盒的并集
+     */
+    private void onActiveMatrixChanged() {
+        mActive.updateGeometry();
+        mDirty.set(mActiveBounds);
+        updateControls();
+        mDirty.union(mActiveBounds);
+        invalidate(mDirty);
+    }
+
+    private void updateControls() {
+        float[] quad = mActive.mQuad;
+        //删除在右上角
+        centerRect(mDeleteRect, quad[2], quad[3], mDeleteBitmap);
+        //拉伸等操作在右下角
+        centerRect(mResizeRect, quad[4], quad[5], mResizeBitmap);
+        //水平镜像在左下角
+        centerRect(mFlipRect, quad[6], quad[7], mFlipBitmap);
+        //置顶在左上角
+        centerRect(mTopRect, quad[0], quad[1], mTopBitmap);
+        mActive.mBounds.roundOut(mActiveBounds);
+        mActiveBounds.union(mDeleteRect);
+        mActiveBounds.union(mResizeRect);
+        mActiveBounds.union(mFlipRect);
+        mActiveBounds.union(mTopRect);
+        int stroke = (int) Math.ceil(mFramePaint.getStrokeWidth()) + 1;
+        mActiveBounds.inset(-stroke, -stroke);
+    }
+
+    private static void centerRect(Rect rect, float x, float y, Bitmap icon) {
+        int halfWidth = icon.getWidth() / 2;
+        int halfHeight = icon.getHeight() / 2;
+        rect.set((int) x - halfWidth, (int) y - halfHeight, (int) x + halfWidth, (int) y + halfHeight);
+    }
+
+    /**
+     * 从最上层往下找第一个包含该点的图层
+     */
+    private StickerLayer findLayerAt(float x, float y) {
+        for (int i = mLayers.size() - 1; i >= 0; i--) {
+            StickerLayer layer = mLayers.get(i);
+            if (layer.contains(x, y)) {
+                return layer;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        int action = MotionEventCompat.getActionMasked(event);
+        float x = event.getX(0);
+        float y = event.getY(0);
+        switch (action) {
+            case MotionEvent.ACTION_DOWN:
+                return onDown(x, y);
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if (mActive != null && spacing(event) > POINTER_LIMIT_DIS) {
+                    mLastDistance = spacing(event);
+                    mMode = MODE_PINCH;
+                    startGesture();
+                } else {
+                    mMode = MODE_NONE;
+                }
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (mActive == null) {
+                    break;
+                }
+                if (mMode == MODE_DRAG) {
+                    mActive.mMatrix.postTranslate(x - mLastX, y - mLastY);
+                    mLastX = x;
+                    mLastY = y;
+                    onActiveMatrixChanged();
+                } else if (mMode == MODE_ROTATE_SCALE) {
+                    mActive.getCenter(mCenter);
+                    double lastAngle = Math.atan2(mLastY - mCenter.y, mLastX - mCenter.x);
+                    double angle = Math.atan2(y - mCenter.y, x - mCenter.x);
+                    float lastLength = (float) Math.hypot(mLastX - mCenter.x, mLastY - mCenter.y);
+                    float length = (float) Math.hypot(x - mCenter.x, y - mCenter.y);
+                    mActive.mMatrix.postRotate((float) Math.toDegrees(angle - lastAngle), mCenter.x, mCenter.y);
+                    if (lastLength > 0) {
+                        scaleActive(length / lastLength);
+                    }
+                    mLastX = x;
+                    mLastY = y;
+                    onActiveMatrixChanged();
+                } else if (mMode == MODE_PINCH) {
+                    float distance = spacing(event);
+                    if (distance >= POINTER_LIMIT_DIS) {
+                        mActive.getCenter(mCenter);
+                        scaleActive(distance / mLastDistance);
+                        mLastDistance = distance;
+                        onActiveMatrixChanged();
+                    }
+                }
+                break;
+            case MotionEvent.ACTION_POINTER_UP:
+                // 剩下一根手指时不接着拖，避免跳动
+                mMode = MODE_NONE;
+                break;
+            case MotionEvent.ACTION_CANCEL:
+            case MotionEvent.ACTION_UP:
+                mMode = MODE_NONE;
+                recordGesture();
+                if (mActive != null && mActive.updateRaster()) {
+                    invalidate(mActiveBounds);
+                }
+                break;
+        }
+        return true;
+    }
+
+    private boolean onDown(float x, float y) {
+        if (mActive != null) {
+            if (mDeleteRect.contains((int) x, (int) y)) {
+                StickerLayer layer = mActive;
+                removeLayer(layer);
+                if (mListener != null) {
+                    mListener.onLayerRemoved(layer);
+                }
+                return true;
+            }
+            if (x >= mResizeRect.left - RESIZE_SLOP && x <= mResizeRect.right + RESIZE_SLOP
+                    && y >= mResizeRect.top - RESIZE_SLOP && y <= mResizeRect.bottom + RESIZE_SLOP) {
+                mMode = MODE_ROTATE_SCALE;
+                mLastX = x;
+                mLastY = y;
+                startGesture();
+                return true;
+            }
+            if (mFlipRect.contains((int) x, (int) y)) {
+                //水平镜像
+                mActive.getCenter(mCenter);
+                mDelta.setScale(-1f, 1f, mCenter.x, mCenter.y);
+                mActive.mMatrix.postConcat(mDelta);
+                onActiveMatrixChanged();
+                recordTransform(mActive, mDelta);
+                return true;
+            }
+            if (mTopRect.contains((int) x, (int) y)) {
+                //置顶
+                StickerLayer layer = mActive;
+                bringToFront(layer);
+                if (mListener != null) {
+                    mListener.onLayerTop(layer);
+                }
+                return true;
+            }
+        }
+        StickerLayer hit = findLayerAt(x, y);
+        if (hit == null) {
+            return false;
+        }
+        if (hit != mActive) {
+            setActiveLayer(hit);
+            if (mListener != null) {
+                mListener.onLayerSelected(hit);
+            }
+        }
+        mMode = MODE_DRAG;
+        mLastX = x;
+        mLastY = y;
+        startGesture();
+        return true;
+    }
+
+    /**
+     * 以图层中心缩放，限制在图层的最小和最大比例之间
+     */
+    private void scaleActive(float scale) {
+        float current = mActive.getScale();
+        float target = Math.max(mActive.mMinScale, Math.min(mActive.mMaxScale, current * scale));
+        if (current > 0 && target != current) {
+            float s = target / current;
+            mActive.mMatrix.postScale(s, s, mCenter.x, mCenter.y);
+        }
+    }
+
+    /**
+     * 计算双指之间的距离
+     */
+    private static float spacing(MotionEvent event) {
+        if (event.getPointerCount() < 2) {
+            return 0;
+        }
+        return (float) Math.hypot(event.getX(0) - event.getX(1), event.getY(0) - event.getY(1));
+    }
+
+    @Override
+    public long getBitmapByteCount() {
+        long bytes = 0;
+        if (mBelowCache != null) {
+            bytes += mBelowCache.getByteCount();
+        }
+        if (mAboveCache != null) {
+            bytes += mAboveCache.getByteCount();
+        }
+        for (int i = 0; i < mLayers.size(); i++) {
+            bytes += mLayers.get(i).getRasterByteCount();
+        }
+        return bytes;
+    }
+
+    @Override
+    public int getTrimPriority() {
+        // 缓存都能从图层重建，但显示着的时候丢了下一帧就要重画
+        return isShown() && getWindowVisibility() == VISIBLE
+                ? MemoryGovernor.PRIORITY_VISIBLE : MemoryGovernor.PRIORITY_HIDDEN;
+    }
+
+    @Override
+    public long trimBitmaps() {
+        if (mRebuilding) {
+            return 0;
+        }
+        long freed = 0;
+        if (mBelowCache != null) {
+            freed += mBelowCache.getByteCount();
+        }
+        if (mAboveCache != null) {
+            freed += mAboveCache.getByteCount();
+        }
+        releaseCaches();
+        mCachesValid = false;
+        for (int i = 0; i < mLayers.size(); i++) {
+            freed += mLayers.get(i).releaseRaster();
+        }
+        invalidate();
+        return freed;
+    }
+
+    /**
+     * 检查点：从下到上每个图层的 id 和矩阵前两行
+     */
+    private static class LayerState {
+        final int[] ids;
+        final float[] matrices;
+
+        LayerState(int count) {
+            ids = new int[count];
+            matrices = new float[count * EditHistory.ARGS];
+        }
+    }
+
+    private class HistoryTarget implements EditHistory.Target, EditHistory.OnTrimListener {
+        private final Matrix mMatrix = new Matrix();
+        private final float[] mAffine = new float[9];
+
+        @Override
+        public Object saveState() {
+            LayerState state = new LayerState(mLayers.size());
+            for (int i = 0; i < mLayers.size(); i++) {
+                StickerLayer layer = mLayers.get(i);
+                state.ids[i] = layer.mId;
+                layer.mMatrix.getValues(mAffine);
+                System.arraycopy(mAffine, 0, state.matrices, i * EditHistory.ARGS, EditHistory.ARGS);
+            }
+            return state;
+        }
+
+        @Override
+        public void restoreState(Object saved) {
+            LayerState state = (LayerState) saved;
+            mLayers.clear();
+            for (int i = 0; i < state.ids.length; i++) {
+                StickerLayer layer = mLayerIds.get(state.ids[i]);
+                setAffine(layer.mMatrix, state.matrices, i * EditHistory.ARGS);
+                mLayers.add(layer);
+            }
+        }
+
+        @Override
+        public void apply(byte op, int id, float[] args, int offset, String text) {
+            StickerLayer layer = mLayerIds.get(id);
+            switch (op) {
+                case EditHistory.OP_TRANSFORM:
+                    setAffine(mMatrix, args, offset);
+                    layer.mMatrix.postConcat(mMatrix);
+                    break;
+                case EditHistory.OP_ADD:
+                    setAffine(layer.mMatrix, args, offset);
+                    mLayers.add(layer);
+                    mActive = layer;
+                    break;
+                case EditHistory.OP_REMOVE:
+                    mLayers.remove(layer);
+                    break;
+                case EditHistory.OP_REORDER:
+                    mLayers.remove(layer);
+                    mLayers.add((int) args[offset], layer);
+                    break;
+            }
+        }
+
+        /**
+         * 撤销不回去的图层从 mLayerIds 里去掉，不然删过的贴纸一直留着
+         */
+        @Override
+        public void onTrimmed(Object oldest) {
+            int[] oldestIds = ((LayerState) oldest).ids;
+            for (int i = mLayerIds.size() - 1; i >= 0; i--) {
+                StickerLayer layer = mLayerIds.valueAt(i);
+                if (!mLayers.contains(layer) && !contains(oldestIds, layer.mId)
+                        && !mHistory.isReferenced(layer.mId)) {
+                    mLayerIds.removeAt(i);
+                }
+            }
+        }
+
+        private boolean contains(int[] ids, int id) {
+            for (int i : ids) {
+                if (i == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void setAffine(Matrix matrix, float[] values, int offset) {
+            System.arraycopy(values, offset, mAffine, 0, EditHistory.ARGS);
+            mAffine[6] = 0;
+            mAffine[7] = 0;
+            mAffine[8] = 1;
+            matrix.setValues(mAffine);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.sssta.qaq.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.widget.ImageView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按图层的实时矩阵把模板和贴纸一次画进任意分辨率的输出。
+ *
+ * 图层矩阵是 {@link StickerCompositorView} 里的坐标，{@link #snapshot} 在主线程用预览 ImageView
+ * 的显示矩阵把它换算到模板像素坐标并复制一份，之后 {@link #render} 可以在后台线程执行。
+ * 贴纸直接用原图或矢量文字绘制，不经过屏幕上的缓存图，旋转出去的角也不会被裁掉。
+ */
+public class StickerExporter {
+
+    private final Bitmap mTemplate;
+    private final List<StickerLayer> mLayers;
+    /**
+     * 每个图层从本地坐标到模板像素坐标的变换
+     */
+    private final List<Matrix> mMatrices;
+    /**
+     * 快照时图层在合成视图里的矩阵，用来判断之后有没有被改过
+     */
+    private final List<Matrix> mLayerMatrices;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private StickerExporter(Bitmap template, List<StickerLayer> layers, List<Matrix> matrices,
+                            List<Matrix> layerMatrices) {
+        mTemplate = template;
+        mLayers = layers;
+        mMatrices = matrices;
+        mLayerMatrices = layerMatrices;
+    }
+
+    /**
+     * 在主线程记下当前所有图层的位置
+     *
+     * @param preview  显示模板的 ImageView，和合成视图重叠、大小相同
+     * @param template preview 里显示的模板，或同样大小的图
+     * @return 模板还没显示出来时返回 null
+     */
+    public static StickerExporter snapshot(ImageView preview, Bitmap template, List<StickerLayer> layers) {
+        Matrix viewToTemplate = new Matrix();
+        if (!viewToImage(preview, template, viewToTemplate)) {
+            return null;
+        }
+        ArrayList<StickerLayer> snapshotLayers = new ArrayList<>(layers);
+        ArrayList<Matrix> matrices = new ArrayList<>(layers.size());
+        ArrayList<Matrix> layerMatrices = new ArrayList<>(layers.size());
+        for (StickerLayer layer : snapshotLayers) {
+            Matrix matrix = new Matrix(layer.getMatrix());
+            layerMatrices.add(new Matrix(matrix));
+            matrix.postConcat(viewToTemplate);
+            matrices.add(matrix);
+        }
+        return new StickerExporter(template, snapshotLayers, matrices, layerMatrices);
+    }
+
+    /**
+     * 图层和快照时相比没有增删、换顺序或移动过，在主线程调用
+     */
+    public boolean isCurrent(List<StickerLayer> layers) {
+        if (layers.size() != mLayers.size()) {
+            return false;
+        }
+        for (int i = 0; i < layers.size(); i++) {
+            if (layers.get(i) != mLayers.get(i) || !layers.get(i).getMatrix().equals(mLayerMatrices.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 计算 view 坐标到 image 像素坐标的变换，和 ImageView 的绘制顺序相反：
+     * 图片铺满 drawable 的 bounds，再经过 image matrix 和 padding
+     */
+    static boolean viewToImage(ImageView view, Bitmap image, Matrix out) {
+        Drawable drawable = view.getDrawable();
+        if (drawable == null) {
+            return false;
+        }
+        Rect bounds = drawable.getBounds();
+        if (bounds.isEmpty()) {
+            return false;
+        }
+        Matrix imageToView = new Matrix();
+        imageToView.setScale(bounds.width() / (float) image.getWidth(), bounds.height() / (float) image.getHeight());
+        imageToView.postTranslate(bounds.left, bounds.top);
+        imageToView.postConcat(view.getImageMatrix());
+        imageToView.postTranslate(view.getPaddingLeft(), view.getPaddingTop());
+        return imageToView.invert(out);
+    }
+
+    public List<StickerLayer> getLayers() {
+        return mLayers;
+    }
+
+    /**
+     * 画出模板加所有图层，可以在后台线程调用
+     *
+     * @param targetWidth 输出宽度，高度按模板比例
+     */
+    public Bitmap render(int targetWidth) {
+        float scale = targetWidth / (float) mTemplate.getWidth();
+        int targetHeight = Math.max(1, Math.round(mTemplate.getHeight() * scale));
+        Bitmap output = Bitmap.createBitmap(targetWidth, targetHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(output);
+        canvas.scale(scale, scale);
+        canvas.drawBitmap(mTemplate, 0, 0, mPaint);
+        for (int i = 0; i < mLayers.size(); i++) {
+            int count = canvas.save();
+            canvas.concat(mMatrices.get(i));
+            mLayers.get(i).drawContent(canvas);
+            canvas.restoreToCount(count);
+        }
+        return output;
+    }
+}
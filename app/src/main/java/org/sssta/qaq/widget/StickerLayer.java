@@ -0,0 +1,303 @@
+package org.sssta.qaq.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PointF;
+import android.graphics.RectF;
+
+/**
+ * {@link StickerCompositorView} 里的一层：人脸、文字或表情。
+ *
+ * 内容按当前缩放栅格化成一张缓存图，平移、旋转、镜像只改矩阵；
+ * 缩放变化超过 {@link #RASTER_TOLERANCE} 后，由合成器在手势结束时调用 {@link #updateRaster()} 重建。
+ */
+public abstract class StickerLayer {
+
+    public static final int TYPE_FACE = 0;
+    public static final int TYPE_TEXT = 1;
+    public static final int TYPE_EXPRESSION = 2;
+
+    /**
+     * 缓存图的比例和当前缩放相差不到这个比例时不重建
+     */
+    private static final float RASTER_TOLERANCE = 0.05f;
+    /**
+     * 缓存图最长边，放得再大也不超过
+     */
+    private static final int MAX_RASTER_SIZE = 2048;
+
+    private final int mType;
+    protected final float mWidth;
+    protected final float mHeight;
+
+    final Matrix mMatrix = new Matrix();
+    private final float[] mValues = new float[9];
+    /**
+     * 内容四个角，顺时针：左上 右上 右下 左下
+     */
+    private final float[] mCorners;
+    /**
+     * 变换后的四个角，矩阵改变后由 {@link #updateGeometry()} 更新
+     */
+    final float[] mQuad = new float[8];
+    final RectF mBounds = new RectF();
+    /**
+     * 合成器分配的 id，撤销记录里用它指代图层
+     */
+    int mId = -1;
+
+    float mMinScale = 1f;
+    float mMaxScale = 1f;
+
+    private Bitmap mRaster;
+    private boolean mOwnsRaster;
+    private float mRasterScale;
+    private final Matrix mRasterMatrix = new Matrix();
+
+    protected StickerLayer(int type, float width, float height) {
+        mType = type;
+        mWidth = width;
+        mHeight = height;
+        mCorners = new float[]{0, 0, width, 0, width, height, 0, height};
+        updateGeometry();
+    }
+
+    /**
+     * 人脸或表情图层，图片由调用方持有，移除图层时不会回收
+     */
+    public static StickerLayer bitmap(int type, Bitmap bitmap) {
+        return new BitmapLayer(type, bitmap);
+    }
+
+    public static StickerLayer text(String text, float textSize, int color) {
+        return new TextLayer(text, textSize, color);
+    }
+
+    /**
+     * 在 (0, 0, width, height) 的本地坐标里画出内容，内容创建后不再改变，可以在后台线程调用
+     */
+    protected abstract void drawContent(Canvas canvas);
+
+    /**
+     * 可以直接当缓存图用的原图，没有就返回 null
+     */
+    protected Bitmap getSourceBitmap() {
+        return null;
+    }
+
+    public int getType() {
+        return mType;
+    }
+
+    public float getWidth() {
+        return mWidth;
+    }
+
+    public float getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * 本地坐标到合成器坐标的变换，只读
+     */
+    public Matrix getMatrix() {
+        return mMatrix;
+    }
+
+    public boolean isMirrored() {
+        // 镜像过奇数次时行列式为负
+        mMatrix.getValues(mValues);
+        return mValues[Matrix.MSCALE_X] * mValues[Matrix.MSCALE_Y]
+                - mValues[Matrix.MSKEW_X] * mValues[Matrix.MSKEW_Y] < 0;
+    }
+
+    public float getScale() {
+        mMatrix.getValues(mValues);
+        return (float) Math.hypot(mValues[Matrix.MSCALE_X], mValues[Matrix.MSKEW_Y]);
+    }
+
+    void getCenter(PointF out) {
+        out.set((mQuad[0] + mQuad[4]) / 2, (mQuad[1] + mQuad[5]) / 2);
+    }
+
+    /**
+     * 矩阵改变后重新计算四个角和包围盒
+     */
+    void updateGeometry() {
+        mMatrix.mapPoints(mQuad, mCorners);
+        mBounds.set(mQuad[0], mQuad[1], mQuad[0], mQuad[1]);
+        for (int i = 2; i < mQuad.length; i += 2) {
+            mBounds.union(mQuad[i], mQuad[i + 1]);
+        }
+    }
+
+    /**
+     * 先用包围盒排除，再判断是否在旋转后的四边形里
+     */
+    boolean contains(float x, float y) {
+        if (!mBounds.contains(x, y)) {
+            return false;
+        }
+        // 四条边的叉积同号就在内部，镜像后方向反过来也成立
+        int sign = 0;
+        for (int i = 0; i < 8; i += 2) {
+            float x0 = mQuad[i];
+            float y0 = mQuad[i + 1];
+            float x1 = mQuad[(i + 2) % 8];
+            float y1 = mQuad[(i + 3) % 8];
+            float cross = (x1 - x0) * (y - y0) - (y1 - y0) * (x - x0);
+            if (cross != 0) {
+                int s = cross > 0 ? 1 : -1;
+                if (sign != 0 && s != sign) {
+                    return false;
+                }
+                sign = s;
+            }
+        }
+        return true;
+    }
+
+    private float targetRasterScale() {
+        float scale = getScale();
+        float limit = MAX_RASTER_SIZE / Math.max(mWidth, mHeight);
+        if (getSourceBitmap() != null) {
+            // 原图放大栅格化没有意义
+            limit = Math.min(limit, 1f);
+        }
+        return Math.min(scale, limit);
+    }
+
+    /**
+     * 按当前缩放重建缓存图，比例变化不大时保留原来的
+     *
+     * @return 是否重建了
+     */
+    boolean updateRaster() {
+        float scale = targetRasterScale();
+        if (mRaster != null && Math.abs(scale - mRasterScale) <= mRasterScale * RASTER_TOLERANCE) {
+            return false;
+        }
+        releaseRaster();
+        Bitmap source = getSourceBitmap();
+        if (source != null && scale >= 1f - RASTER_TOLERANCE) {
+            mRaster = source;
+            mOwnsRaster = false;
+        } else {
+            int width = Math.max(1, Math.round(mWidth * scale));
+            int height = Math.max(1, Math.round(mHeight * scale));
+            mRaster = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mOwnsRaster = true;
+            Canvas canvas = new Canvas(mRaster);
+            canvas.scale(width / mWidth, height / mHeight);
+            drawContent(canvas);
+        }
+        mRasterScale = scale;
+        return true;
+    }
+
+    void draw(Canvas canvas, Paint paint) {
+        if (mRaster == null) {
+            updateRaster();
+        }
+        mRasterMatrix.set(mMatrix);
+        mRasterMatrix.preScale(mWidth / mRaster.getWidth(), mHeight / mRaster.getHeight());
+        canvas.drawBitmap(mRaster, mRasterMatrix, paint);
+    }
+
+    /**
+     * 缓存图占用的字节数，直接用原图时不算
+     */
+    long getRasterByteCount() {
+        return mOwnsRaster ? mRaster.getByteCount() : 0;
+    }
+
+    long releaseRaster() {
+        long freed = getRasterByteCount();
+        if (mOwnsRaster) {
+            mRaster.recycle();
+        }
+        mRaster = null;
+        mOwnsRaster = false;
+        return freed;
+    }
+
+    /**
+     * 计算图层的角度、位置和缩放，导出给 {@link StickerPropertyModel}
+     *
+     * @param referenceWidth 位置和缩放以这个宽度为 1
+     */
+    public StickerPropertyModel calculate(StickerPropertyModel model, int referenceWidth) {
+        mMatrix.getValues(mValues);
+        float rScale = (float) Math.hypot(mValues[Matrix.MSCALE_X], mValues[Matrix.MSKEW_Y]);
+        float rAngle = Math.round(Math.atan2(mValues[Matrix.MSKEW_X], mValues[Matrix.MSCALE_X]) * (180 / Math.PI));
+        model.setDegree((float) Math.toRadians(rAngle));
+        model.setScaling(mWidth * rScale / referenceWidth);
+        model.setxLocation((mQuad[0] + mQuad[4]) / 2 / referenceWidth);
+        model.setyLocation((mQuad[1] + mQuad[5]) / 2 / referenceWidth);
+        model.setHorizonMirror(isMirrored() ? 1 : 2);
+        return model;
+    }
+
+    private static class BitmapLayer extends StickerLayer {
+        private final Bitmap mBitmap;
+        // 导出时带旋转直接画原图，边缘要抗锯齿
+        private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
+
+        BitmapLayer(int type, Bitmap bitmap) {
+            super(type, bitmap.getWidth(), bitmap.getHeight());
+            mBitmap = bitmap;
+        }
+
+        @Override
+        protected void drawContent(Canvas canvas) {
+            canvas.drawBitmap(mBitmap, 0, 0, mPaint);
+        }
+
+        @Override
+        protected Bitmap getSourceBitmap() {
+            return mBitmap;
+        }
+    }
+
+    private static class TextLayer extends StickerLayer {
+        private final String[] mLines;
+        private final float mLineHeight;
+        private final Paint mPaint;
+
+        TextLayer(String text, float textSize, int color) {
+            this(text.split("\n"), textPaint(textSize, color));
+        }
+
+        private TextLayer(String[] lines, Paint paint) {
+            super(TYPE_TEXT, measureWidth(lines, paint), paint.getTextSize() * lines.length + 8);
+            mLines = lines;
+            mLineHeight = paint.getTextSize();
+            mPaint = paint;
+        }
+
+        private static Paint textPaint(float textSize, int color) {
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.SUBPIXEL_TEXT_FLAG);
+            paint.setTextSize(textSize);
+            paint.setColor(color);
+            return paint;
+        }
+
+        private static float measureWidth(String[] lines, Paint paint) {
+            float width = 1;
+            for (String line : lines) {
+                width = Math.max(width, paint.measureText(line));
+            }
+            return width;
+        }
+
+        @Override
+        protected void drawContent(Canvas canvas) {
+            // 画布已经按缓存比例缩放，文字按矢量重新光栅化，放大后仍然清晰
+            for (int i = 0; i < mLines.length; i++) {
+                canvas.drawText(mLines[i], 0, (i + 1) * mLineHeight, mPaint);
+            }
+        }
+    }
+}
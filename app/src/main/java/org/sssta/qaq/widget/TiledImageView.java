@@ -0,0 +1,424 @@
+package org.sssta.qaq.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.util.LongSparseArray;
+import android.util.LruCache;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import org.sssta.qaq.pipeline.Pipeline;
+import org.sssta.qaq.pipeline.PipelineTask;
+import org.sssta.qaq.thumbnail.ThumbnailLoader;
+import org.sssta.qaq.utils.MemoryGovernor;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 可缩放的大图查看器。
+ *
+ * 先显示一张降采样到屏幕大小的底图，放大后只用 {@link BitmapRegionDecoder} 解码可见区域的图块，
+ * 图块按当前缩放对应的采样率解码并放进 LRU，所以内存占用和原图大小无关。
+ * 单击触发 {@link #performClick()}，长按触发 {@link #performLongClick()}，双击在适应屏幕和放大之间切换。
+ */
+public class TiledImageView extends View implements MemoryGovernor.Client {
+
+    private static final int TILE_SIZE = 256;
+    private static final float MAX_ZOOM = 4f;
+    private static final float DOUBLE_TAP_ZOOM = 2.5f;
+
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect mVisible = new Rect();
+    private final Rect mTileRect = new Rect();
+    private final RectF mDest = new RectF();
+
+    private ScaleGestureDetector mScaleDetector;
+    private GestureDetector mGestureDetector;
+
+    private ThumbnailLoader.Source mSource;
+    private PipelineTask<BitmapRegionDecoder> mOpenTask;
+    private BitmapRegionDecoder mDecoder;
+    private int mImageWidth;
+    private int mImageHeight;
+
+    private Bitmap mBase;
+    private int mBaseSample;
+
+    private LruCache<Long, Bitmap> mTiles;
+    private final LongSparseArray<PipelineTask<Bitmap>> mPendingTiles = new LongSparseArray<>();
+
+    /**
+     * 屏幕像素 / 原图像素
+     */
+    private float mScale;
+    private float mMinScale;
+    private float mTranslateX;
+    private float mTranslateY;
+
+    public TiledImageView(Context context) {
+        super(context);
+        init(context);
+    }
+
+    public TiledImageView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init(context);
+    }
+
+    public TiledImageView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init(context);
+    }
+
+    private void init(Context context) {
+        mScaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                zoomBy(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                return true;
+            }
+        });
+        mGestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                mTranslateX -= distanceX;
+                mTranslateY -= distanceY;
+                constrain();
+                invalidate();
+                return true;
+            }
+
+            @Override
+            public boolean onSingleTapConfirmed(MotionEvent e) {
+                return performClick();
+            }
+
+            @Override
+            public void onLongPress(MotionEvent e) {
+                performLongClick();
+            }
+
+            @Override
+            public boolean onDoubleTap(MotionEvent e) {
+                float target = mScale > mMinScale * 1.01f ? mMinScale : mMinScale * DOUBLE_TAP_ZOOM;
+                zoomBy(target / mScale, e.getX(), e.getY());
+                return true;
+            }
+        });
+    }
+
+    public void setImageResource(int resId) {
+        setImageSource(ThumbnailLoader.Source.resource(resId));
+    }
+
+    public void setImageFile(String path) {
+        setImageSource(ThumbnailLoader.Source.file(path));
+    }
+
+    public void setImageSource(ThumbnailLoader.Source source) {
+        release();
+        mSource = source;
+        if (getWidth() > 0 && getHeight() > 0) {
+            open();
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (mTiles != null) {
+            mTiles.evictAll();
+        }
+        // 每屏最多两倍屏幕面积的图块
+        mTiles = new LruCache<Long, Bitmap>(Math.max(1, w * h * 4 * 2)) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Long key, Bitmap oldValue, Bitmap newValue) {
+                oldValue.recycle();
+            }
+        };
+        if (mDecoder != null) {
+            fitToView();
+        } else if (mSource != null && mOpenTask == null) {
+            open();
+        }
+    }
+
+    private void open() {
+        final ThumbnailLoader.Source source = mSource;
+        final int viewWidth = getWidth();
+        final int viewHeight = getHeight();
+        mOpenTask = Pipeline.get().submit(getContext(), Pipeline.Stage.DECODE, Pipeline.PRIORITY_INTERACTIVE,
+                new PipelineTask<BitmapRegionDecoder>() {
+                    private Bitmap mDecodedBase;
+                    private int mDecodedSample;
+
+                    @Override
+                    protected BitmapRegionDecoder run() throws IOException {
+                        InputStream in = source.open(getResources());
+                        BitmapRegionDecoder decoder;
+                        try {
+                            decoder = BitmapRegionDecoder.newInstance(in, false);
+                        } finally {
+                            in.close();
+                        }
+                        int width = decoder.getWidth();
+                        int height = decoder.getHeight();
+                        float fit = Math.min(viewWidth / (float) width, viewHeight / (float) height);
+                        mDecodedSample = sampleSizeFor(fit);
+                        BitmapFactory.Options options = new BitmapFactory.Options();
+                        options.inSampleSize = mDecodedSample;
+                        mDecodedBase = decoder.decodeRegion(new Rect(0, 0, width, height), options);
+                        return decoder;
+                    }
+
+                    @Override
+                    protected void onResult(BitmapRegionDecoder decoder) {
+                        mOpenTask = null;
+                        mDecoder = decoder;
+                        mImageWidth = decoder.getWidth();
+                        mImageHeight = decoder.getHeight();
+                        mBase = mDecodedBase;
+                        mBaseSample = mDecodedSample;
+                        fitToView();
+                    }
+
+                    @Override
+                    protected void onError(Exception e) {
+                        super.onError(e);
+                        mOpenTask = null;
+                    }
+                });
+    }
+
+    private void fitToView() {
+        mMinScale = Math.min(getWidth() / (float) mImageWidth, getHeight() / (float) mImageHeight);
+        mScale = mMinScale;
+        mTranslateX = (getWidth() - mImageWidth * mScale) / 2;
+        mTranslateY = (getHeight() - mImageHeight * mScale) / 2;
+        invalidate();
+    }
+
+    /**
+     * 缩放到 scale 时够用的最大 2 的幂采样率
+     */
+    private static int sampleSizeFor(float scale) {
+        int sample = 1;
+        while (sample * 2 * scale <= 1f) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    private void zoomBy(float factor, float focusX, float focusY) {
+        if (mDecoder == null) {
+            return;
+        }
+        float scale = Math.max(mMinScale, Math.min(mMinScale * MAX_ZOOM, mScale * factor));
+        factor = scale / mScale;
+        mTranslateX = focusX - (focusX - mTranslateX) * factor;
+        mTranslateY = focusY - (focusY - mTranslateY) * factor;
+        mScale = scale;
+        constrain();
+        invalidate();
+    }
+
+    /**
+     * 图比屏幕小的方向居中，比屏幕大的方向不露出边界
+     */
+    private void constrain() {
+        float width = mImageWidth * mScale;
+        float height = mImageHeight * mScale;
+        if (width <= getWidth()) {
+            mTranslateX = (getWidth() - width) / 2;
+        } else {
+            mTranslateX = Math.max(getWidth() - width, Math.min(0, mTranslateX));
+        }
+        if (height <= getHeight()) {
+            mTranslateY = (getHeight() - height) / 2;
+        } else {
+            mTranslateY = Math.max(getHeight() - height, Math.min(0, mTranslateY));
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = mScaleDetector.onTouchEvent(event);
+        handled |= mGestureDetector.onTouchEvent(event);
+        return handled || super.onTouchEvent(event);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mDecoder == null || mBase == null) {
+            return;
+        }
+        mDest.set(mTranslateX, mTranslateY,
+                mTranslateX + mImageWidth * mScale, mTranslateY + mImageHeight * mScale);
+        canvas.drawBitmap(mBase, null, mDest, mPaint);
+
+        int sample = sampleSizeFor(mScale);
+        if (sample >= mBaseSample) {
+            cancelTilesExcept(0, 0, 0, 0, 0);
+            return;
+        }
+
+        // 可见区域换算到原图坐标
+        mVisible.set((int) Math.max(0, -mTranslateX / mScale),
+                (int) Math.max(0, -mTranslateY / mScale),
+                (int) Math.min(mImageWidth, (getWidth() - mTranslateX) / mScale + 1),
+                (int) Math.min(mImageHeight, (getHeight() - mTranslateY) / mScale + 1));
+        int tileExtent = TILE_SIZE * sample;
+        int firstCol = mVisible.left / tileExtent;
+        int lastCol = (mVisible.right - 1) / tileExtent;
+        int firstRow = mVisible.top / tileExtent;
+        int lastRow = (mVisible.bottom - 1) / tileExtent;
+        cancelTilesExcept(sample, firstCol, lastCol, firstRow, lastRow);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                long key = tileKey(sample, col, row);
+                Bitmap tile = mTiles.get(key);
+                if (tile == null) {
+                    requestTile(key, sample, col, row);
+                    continue;
+                }
+                mTileRect.set(col * tileExtent, row * tileExtent,
+                        Math.min(mImageWidth, (col + 1) * tileExtent),
+                        Math.min(mImageHeight, (row + 1) * tileExtent));
+                mDest.set(mTranslateX + mTileRect.left * mScale, mTranslateY + mTileRect.top * mScale,
+                        mTranslateX + mTileRect.right * mScale, mTranslateY + mTileRect.bottom * mScale);
+                canvas.drawBitmap(tile, null, mDest, mPaint);
+            }
+        }
+    }
+
+    private static long tileKey(int sample, int col, int row) {
+        return ((long) sample << 48) | ((long) col << 24) | row;
+    }
+
+    private void requestTile(final long key, final int sample, int col, int row) {
+        if (mPendingTiles.get(key) != null) {
+            return;
+        }
+        int tileExtent = TILE_SIZE * sample;
+        final Rect region = new Rect(col * tileExtent, row * tileExtent,
+                Math.min(mImageWidth, (col + 1) * tileExtent), Math.min(mImageHeight, (row + 1) * tileExtent));
+        final BitmapRegionDecoder decoder = mDecoder;
+        PipelineTask<Bitmap> task = new PipelineTask<Bitmap>() {
+            @Override
+            protected Bitmap run() {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = sample;
+                return decoder.decodeRegion(region, options);
+            }
+
+            @Override
+            protected void onResult(Bitmap tile) {
+                mPendingTiles.remove(key);
+                if (tile != null && decoder == mDecoder) {
+                    mTiles.put(key, tile);
+                    invalidate();
+                }
+            }
+
+            @Override
+            protected void onError(Exception e) {
+                super.onError(e);
+                mPendingTiles.remove(key);
+            }
+        };
+        mPendingTiles.put(key, task);
+        Pipeline.get().submit(getContext(), Pipeline.Stage.DECODE, Pipeline.PRIORITY_INTERACTIVE, task);
+    }
+
+    /**
+     * 移出视口或者换了采样率的图块不再解码
+     */
+    private void cancelTilesExcept(int sample, int firstCol, int lastCol, int firstRow, int lastRow) {
+        for (int i = mPendingTiles.size() - 1; i >= 0; i--) {
+            long key = mPendingTiles.keyAt(i);
+            int keySample = (int) (key >>> 48);
+            int col = (int) ((key >>> 24) & 0xffffff);
+            int row = (int) (key & 0xffffff);
+            if (keySample != sample || col < firstCol || col > lastCol || row < firstRow || row > lastRow) {
+                mPendingTiles.valueAt(i).cancel();
+                mPendingTiles.removeAt(i);
+            }
+        }
+    }
+
+    private void release() {
+        if (mOpenTask != null) {
+            mOpenTask.cancel();
+            mOpenTask = null;
+        }
+        cancelTilesExcept(0, 0, 0, 0, 0);
+        if (mTiles != null) {
+            mTiles.evictAll();
+        }
+        if (mDecoder != null) {
+            mDecoder.recycle();
+            mDecoder = null;
+        }
+        if (mBase != null) {
+            mBase.recycle();
+            mBase = null;
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        MemoryGovernor.get(getContext()).register(this);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        MemoryGovernor.get(getContext()).unregister(this);
+        release();
+        mSource = null;
+    }
+
+    @Override
+    public long getBitmapByteCount() {
+        long bytes = mTiles == null ? 0 : mTiles.size();
+        return mBase == null ? bytes : bytes + mBase.getByteCount();
+    }
+
+    @Override
+    public int getTrimPriority() {
+        return isShown() ? MemoryGovernor.PRIORITY_VISIBLE : MemoryGovernor.PRIORITY_HIDDEN;
+    }
+
+    @Override
+    public long trimBitmaps() {
+        // 底图留着，图块下次绘制时重新解码
+        long freed = mTiles == null ? 0 : mTiles.size();
+        if (mTiles != null) {
+            mTiles.evictAll();
+        }
+        return freed;
+    }
+}
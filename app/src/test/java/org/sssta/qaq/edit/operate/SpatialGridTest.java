@@ -0,0 +1,80 @@
+package org.sssta.qaq.edit.operate;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SpatialGridTest {
+
+    private static final SpatialGrid.HitTester<String> NOT_B = new SpatialGrid.HitTester<String>() {
+        @Override
+        public boolean hit(String item, float x, float y) {
+            return !item.equals("b");
+        }
+    };
+
+    @Test
+    public void topmostHitWins() {
+        SpatialGrid<String> grid = new SpatialGrid<>(0, 0, 1000, 1000, 100);
+        grid.put("a", 50, 50, 350, 350);
+        grid.put("b", 200, 200, 500, 500);
+        assertEquals("b", grid.hitTest(250, 250, null));
+        assertEquals("a", grid.hitTest(100, 100, null));
+        assertNull(grid.hitTest(600, 600, null));
+
+        grid.bringToFront("a");
+        assertEquals("a", grid.hitTest(250, 250, null));
+        // 精确判断没通过时落到下面一层
+        grid.bringToFront("b");
+        assertEquals("a", grid.hitTest(250, 250, NOT_B));
+    }
+
+    @Test
+    public void moveUpdatesCells() {
+        SpatialGrid<String> grid = new SpatialGrid<>(0, 0, 1000, 1000, 100);
+        grid.put("a", 10, 10, 60, 60);
+        grid.put("a", 15, 15, 65, 65);
+        assertEquals("a", grid.hitTest(20, 20, null));
+        assertNull(grid.hitTest(12, 12, null));
+
+        grid.put("a", 810, 810, 900, 900);
+        assertNull(grid.hitTest(20, 20, null));
+        assertEquals("a", grid.hitTest(850, 850, null));
+        assertEquals(1, grid.size());
+
+        grid.remove("a");
+        assertNull(grid.hitTest(850, 850, null));
+        assertEquals(0, grid.size());
+    }
+
+    @Test
+    public void boundsOutsideGridAreClampedToEdgeCells() {
+        SpatialGrid<String> grid = new SpatialGrid<>(0, 0, 300, 300, 100);
+        grid.put("a", -80, -80, 20, 20);
+        grid.put("b", 280, 100, 420, 150);
+        assertEquals("a", grid.hitTest(-50, -50, null));
+        assertEquals("b", grid.hitTest(400, 120, null));
+        assertNull(grid.hitTest(400, 200, null));
+    }
+
+    @Test
+    public void hundredsOfObjectsOnlyTestTheTouchedCell() {
+        SpatialGrid<Integer> grid = new SpatialGrid<>(0, 0, 2000, 2000, 128);
+        for (int i = 0; i < 400; i++) {
+            float x = (i % 20) * 100;
+            float y = (i / 20) * 100;
+            grid.put(i, x, y, x + 90, y + 90);
+        }
+        final int[] tested = new int[1];
+        SpatialGrid.HitTester<Integer> counter = new SpatialGrid.HitTester<Integer>() {
+            @Override
+            public boolean hit(Integer item, float x, float y) {
+                tested[0]++;
+                return true;
+            }
+        };
+        assertEquals(Integer.valueOf(21), grid.hitTest(150, 150, counter));
+        assertEquals(1, tested[0]);
+    }
+}
@@ -0,0 +1,95 @@
+package org.sssta.qaq.store;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FavoritesLogTest {
+
+    private static File newFile() {
+        File file = new File(System.getProperty("java.io.tmpdir"), "favorites-" + System.nanoTime() + ".log");
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void replayKeepsOrderAndRemovals() throws Exception {
+        File file = newFile();
+        FavoritesLog log = new FavoritesLog(file);
+        log.append(true, "exp2");
+        log.append(true, "exp6");
+        log.append(true, "exp8");
+        log.append(false, "exp6");
+        log.append(true, "exp2");
+
+        FavoritesLog reopened = new FavoritesLog(file);
+        assertEquals(Arrays.asList("exp8", "exp2"), new ArrayList<>(reopened.load()));
+        assertEquals(5, reopened.getRecordCount());
+        assertEquals(2, reopened.getLiveCount());
+    }
+
+    @Test
+    public void tornTailIsTruncated() throws Exception {
+        File file = newFile();
+        FavoritesLog log = new FavoritesLog(file);
+        log.append(true, "exp2");
+        long intact = file.length();
+
+        // 模拟写到一半被杀：只有操作和长度，没有名字和校验
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[]{FavoritesLog.OP_ADD, 0, 5, 'e'});
+        out.close();
+
+        log = new FavoritesLog(file);
+        assertEquals(Collections.singletonList("exp2"), new ArrayList<>(log.load()));
+        assertEquals(intact, file.length());
+
+        // 截掉以后可以继续追加
+        log.append(true, "exp6");
+        assertEquals(Arrays.asList("exp2", "exp6"), new ArrayList<>(new FavoritesLog(file).load()));
+    }
+
+    @Test
+    public void tornHeaderIsRewrittenOnAppend() throws Exception {
+        File file = newFile();
+        // 文件头只写了两个字节就被杀
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{0x51, 0x46});
+        out.close();
+
+        FavoritesLog log = new FavoritesLog(file);
+        assertTrue(log.load().isEmpty());
+        assertEquals(0, file.length());
+
+        log.append(true, "exp2");
+        assertEquals(Collections.singletonList("exp2"), new ArrayList<>(new FavoritesLog(file).load()));
+    }
+
+    @Test
+    public void compactionRewritesLiveEntries() throws Exception {
+        File file = newFile();
+        FavoritesLog log = new FavoritesLog(file);
+        log.append(true, "exp17");
+        for (int i = 0; i < 40; i++) {
+            log.append(true, "exp2");
+            log.append(false, "exp2");
+        }
+        assertTrue(log.needsCompaction());
+        long before = file.length();
+
+        log.compact(new FavoritesLog(file).load());
+        assertFalse(log.needsCompaction());
+        assertTrue(file.length() < before);
+        FavoritesLog reopened = new FavoritesLog(file);
+        assertEquals(Collections.singletonList("exp17"), new ArrayList<>(reopened.load()));
+        assertEquals(1, reopened.getRecordCount());
+    }
+}
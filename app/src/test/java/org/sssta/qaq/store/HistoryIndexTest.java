@@ -0,0 +1,106 @@
+package org.sssta.qaq.store;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryIndexTest {
+
+    private static File newDirectory() {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "history-" + System.nanoTime());
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    @Test
+    public void pagesNewestFirstByTimeCursor() throws Exception {
+        HistoryIndex index = new HistoryIndex(newDirectory());
+        for (int i = 0; i < 10; i++) {
+            index.append(1000 + i * 10, i % 3, "content://media/" + i, "/sdcard/" + i + ".jpg");
+        }
+
+        List<HistoryIndex.Entry> page = index.query(HistoryIndex.ANY_TEMPLATE, Long.MAX_VALUE, 4);
+        assertEquals(4, page.size());
+        assertEquals(9, page.get(0).id);
+        assertEquals(6, page.get(3).id);
+        assertEquals("content://media/9", page.get(0).output);
+
+        page = index.query(HistoryIndex.ANY_TEMPLATE, page.get(3).time, 4);
+        assertEquals(5, page.get(0).id);
+        assertEquals(2, page.get(3).id);
+
+        page = index.query(HistoryIndex.ANY_TEMPLATE, page.get(3).time, 4);
+        assertEquals(2, page.size());
+        index.close();
+    }
+
+    @Test
+    public void queriesByTemplateUsePostings() throws Exception {
+        HistoryIndex index = new HistoryIndex(newDirectory());
+        for (int i = 0; i < 10; i++) {
+            index.append(1000 + i, i % 3, "out" + i, null);
+        }
+        assertEquals(4, index.size(0));
+
+        // 模板 0 的记录是 9 6 3 0
+        List<HistoryIndex.Entry> page = index.query(0, Long.MAX_VALUE, 3);
+        assertEquals(3, page.size());
+        assertEquals(9, page.get(0).id);
+        assertEquals(3, page.get(2).id);
+        assertNull(page.get(0).source);
+
+        page = index.query(0, page.get(2).time, 3);
+        assertEquals(1, page.size());
+        assertEquals(0, page.get(0).id);
+        assertEquals(0, page.get(0).template);
+        index.close();
+    }
+
+    @Test
+    public void timesStayStrictlyIncreasing() throws Exception {
+        HistoryIndex index = new HistoryIndex(newDirectory());
+        HistoryIndex.Entry first = index.append(5000, 0, "a", null);
+        HistoryIndex.Entry second = index.append(5000, 0, "b", null);
+        HistoryIndex.Entry third = index.append(4000, 1, "c", null);
+        assertTrue(second.time > first.time);
+        assertTrue(third.time > second.time);
+        assertEquals(1, index.lowerBound(second.time));
+        index.close();
+    }
+
+    @Test
+    public void tornAppendIsDiscardedOnReopen() throws Exception {
+        File dir = newDirectory();
+        HistoryIndex index = new HistoryIndex(dir);
+        index.append(1000, 0, "a", null);
+        index.append(2000, 1, "b", null);
+        index.close();
+
+        // 模拟追加到一半被杀：倒排写了，索引记录只写了一半
+        RandomAccessFile postings = new RandomAccessFile(new File(dir, "template-0.idx"), "rw");
+        postings.seek(postings.length());
+        postings.writeInt(2);
+        postings.close();
+        RandomAccessFile records = new RandomAccessFile(new File(dir, HistoryIndex.INDEX_FILE), "rw");
+        records.seek(records.length());
+        records.write(new byte[HistoryIndex.RECORD_SIZE / 2]);
+        records.close();
+
+        index = new HistoryIndex(dir);
+        assertEquals(2, index.size());
+        assertEquals(1, index.size(0));
+
+        // 新记录属于模板 1，不能出现在模板 0 的结果里
+        index.append(3000, 1, "c", null);
+        assertEquals(1, index.query(0, Long.MAX_VALUE, 10).size());
+        assertEquals(2, index.query(1, Long.MAX_VALUE, 10).size());
+        assertEquals("c", index.get(2).output);
+        index.close();
+    }
+}
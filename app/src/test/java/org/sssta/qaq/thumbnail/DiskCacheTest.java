@@ -0,0 +1,81 @@
+package org.sssta.qaq.thumbnail;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DiskCacheTest {
+
+    private static File newDirectory() {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "disk-cache-" + System.nanoTime());
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    @Test
+    public void leastRecentlyReadIsEvictedAndOrderSurvivesReopen() throws Exception {
+        File dir = newDirectory();
+        DiskCache cache = new DiskCache(dir, 30);
+        cache.put("a", new byte[10]);
+        cache.put("b", new byte[10]);
+        cache.put("c", new byte[10]);
+        assertNotNull(cache.get("a"));
+        cache.close();
+
+        // 重放 journal 后 b 是最久没用的
+        cache = new DiskCache(dir, 30);
+        cache.put("d", new byte[10]);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+        assertEquals(30, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void corruptJournalStartsEmpty() throws Exception {
+        File dir = newDirectory();
+        DiskCache cache = new DiskCache(dir, 100);
+        cache.put("a", new byte[10]);
+        cache.close();
+
+        FileWriter writer = new FileWriter(new File(dir, DiskCache.JOURNAL));
+        writer.write("garbage\n");
+        writer.close();
+
+        cache = new DiskCache(dir, 100);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void openedStreamSurvivesEviction() throws Exception {
+        File dir = newDirectory();
+        DiskCache cache = new DiskCache(dir, 10);
+        cache.put("a", new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+        InputStream in = cache.open("a");
+        assertNotNull(in);
+        try {
+            // 另一个线程写入把 a 淘汰掉
+            cache.put("b", new byte[10]);
+            assertNull(cache.get("a"));
+            int total = 0;
+            while (in.read() != -1) {
+                total++;
+            }
+            assertEquals(10, total);
+        } finally {
+            in.close();
+        }
+        assertNull(cache.open("a"));
+        cache.close();
+    }
+}
@@ -0,0 +1,49 @@
+package org.sssta.qaq.trace;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JsonTimelineSinkTest {
+
+    @Test
+    public void spansAreRecordedThroughTracer() throws Exception {
+        JsonTimelineSink sink = new JsonTimelineSink();
+        StageTracer.addSink(sink);
+        try {
+            StageTracer.begin(StageTracer.DECODE).end();
+            StageTracer.begin("compose#\"1\"").end();
+        } finally {
+            StageTracer.removeSink(sink);
+        }
+        StageTracer.begin(StageTracer.ENCODE).end();
+
+        assertEquals(2, sink.size());
+        StringWriter writer = new StringWriter();
+        sink.writeTo(writer);
+        String json = writer.toString();
+        assertTrue(json.startsWith("{\"traceEvents\":[{\"name\":\"decode\",\"ph\":\"X\""));
+        assertTrue(json.contains("\"name\":\"compose#\\\"1\\\"\""));
+        assertFalse(json.contains("encode"));
+        assertTrue(json.endsWith("}]}"));
+    }
+
+    @Test
+    public void oldestSpansAreOverwritten() throws Exception {
+        JsonTimelineSink sink = new JsonTimelineSink(2);
+        sink.onEnd("a", 0, 1000);
+        sink.onEnd("b", 1000, 2000);
+        sink.onEnd("c", 2000, 3000);
+
+        StringWriter writer = new StringWriter();
+        sink.writeTo(writer);
+        String json = writer.toString();
+        assertEquals(2, sink.size());
+        assertFalse(json.contains("\"a\""));
+        assertTrue(json.indexOf("\"b\"") < json.indexOf("\"c\""));
+    }
+}
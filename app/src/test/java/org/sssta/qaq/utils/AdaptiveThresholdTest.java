@@ -0,0 +1,54 @@
+package org.sssta.qaq.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveThresholdTest {
+
+    private static int grey(int lum) {
+        return 0xff000000 | lum << 16 | lum << 8 | lum;
+    }
+
+    @Test
+    public void linesSurviveAcrossLightingGradient() throws Exception {
+        int width = 200;
+        int height = 64;
+        int[] pixels = new int[width * height];
+        // 背景从暗到亮，每隔20列一条比周围暗60的竖线
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int background = 80 + x * 170 / width;
+                boolean line = x % 20 == 10;
+                pixels[y * width + x] = grey(line ? background - 60 : background);
+            }
+        }
+
+        AdaptiveThreshold.sauvola(pixels, width, height, 8, AdaptiveThreshold.DEFAULT_K);
+
+        int row = height / 2 * width;
+        for (int x = 0; x < width; x++) {
+            boolean line = x % 20 == 10;
+            int rgb = pixels[row + x] & 0xffffff;
+            if (line) {
+                assertEquals("line at " + x, false, rgb == 0xffffff);
+            } else if (x % 20 != 9 && x % 20 != 11) {
+                assertEquals("background at " + x, 0xffffff, rgb);
+            }
+        }
+    }
+
+    @Test
+    public void alphaIsPreserved() throws Exception {
+        int[] pixels = new int[64 * 64];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (i % 2 == 0 ? 0x00000000 : 0xff000000) | 0x808080;
+        }
+
+        AdaptiveThreshold.sauvola(pixels, 64, 64, 4, AdaptiveThreshold.DEFAULT_K);
+
+        for (int i = 0; i < pixels.length; i++) {
+            assertEquals(i % 2 == 0 ? 0 : 0xff, pixels[i] >>> 24);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.sssta.qaq.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClaheTest {
+
+    @Test
+    public void darkImageIsStretched() throws Exception {
+        int width = 120;
+        int height = 90;
+        int[] pixels = new int[width * height];
+        // 整张图挤在 10~40 的暗部
+        for (int i = 0; i < pixels.length; i++) {
+            int lum = 10 + (i * 7 + i / width * 3) % 31;
+            pixels[i] = 0xff000000 | lum << 16 | lum << 8 | lum;
+        }
+
+        Clahe.apply(pixels, width, height, Clahe.DEFAULT_TILES, Clahe.DEFAULT_TILES,
+                Clahe.DEFAULT_CLIP_LIMIT);
+
+        int min = 255;
+        int max = 0;
+        for (int pixel : pixels) {
+            int lum = pixel & 0xff;
+            assertEquals(lum, (pixel >> 8) & 0xff);
+            min = Math.min(min, lum);
+            max = Math.max(max, lum);
+        }
+        assertTrue("range " + min + "~" + max, max - min > 120);
+    }
+
+    @Test
+    public void oddSizesAndAlpha() throws Exception {
+        int width = 10;
+        int height = 3;
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0x7f000000 | (i * 8) << 8;
+        }
+
+        Clahe.apply(pixels, width, height, Clahe.DEFAULT_TILES, Clahe.DEFAULT_TILES,
+                Clahe.DEFAULT_CLIP_LIMIT);
+
+        for (int pixel : pixels) {
+            assertEquals(0x7f, pixel >>> 24);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package org.sssta.qaq.widget;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EditHistoryTest {
+
+    /**
+     * 一维的编辑状态：每个对象一个位置，再加层级顺序和文字
+     */
+    private static class Doc implements EditHistory.Target {
+        final float[] positions = new float[8];
+        final List<Integer> order = new ArrayList<>();
+        final String[] texts = new String[8];
+        int restores;
+        int applied;
+
+        @Override
+        public Object saveState() {
+            return new Object[]{positions.clone(), new ArrayList<>(order), texts.clone()};
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void restoreState(Object state) {
+            Object[] s = (Object[]) state;
+            System.arraycopy((float[]) s[0], 0, positions, 0, positions.length);
+            order.clear();
+            order.addAll((List<Integer>) s[1]);
+            System.arraycopy((String[]) s[2], 0, texts, 0, texts.length);
+            restores++;
+        }
+
+        @Override
+        public void apply(byte op, int id, float[] args, int offset, String text) {
+            applied++;
+            switch (op) {
+                case EditHistory.OP_TRANSFORM:
+                    positions[id] += args[offset];
+                    break;
+                case EditHistory.OP_ADD:
+                    positions[id] = args[offset];
+                    order.add(id);
+                    break;
+                case EditHistory.OP_REMOVE:
+                    order.remove(Integer.valueOf(id));
+                    break;
+                case EditHistory.OP_REORDER:
+                    order.remove(Integer.valueOf(id));
+                    order.add((int) args[offset], id);
+                    break;
+                case EditHistory.OP_TEXT:
+                    texts[id] = text;
+                    break;
+            }
+        }
+
+        void move(EditHistory history, int id, float delta) {
+            positions[id] += delta;
+            history.record(EditHistory.OP_TRANSFORM, id, delta, 0, 0, 0, 0, 0);
+        }
+    }
+
+    @Test
+    public void undoAndRedoEveryKindOfCommand() {
+        Doc doc = new Doc();
+        EditHistory history = new EditHistory(doc);
+
+        doc.positions[0] = 5;
+        doc.order.add(0);
+        history.record(EditHistory.OP_ADD, 0, 5, 0, 0, 0, 0, 0);
+        doc.positions[1] = 7;
+        doc.order.add(1);
+        history.record(EditHistory.OP_ADD, 1, 7, 0, 0, 0, 0, 0);
+        doc.move(history, 0, 3);
+        doc.order.remove(Integer.valueOf(0));
+        doc.order.add(0);
+        history.record(EditHistory.OP_REORDER, 0, 1, 0, 0, 0, 0, 0);
+        doc.texts[1] = "hi";
+        history.recordText(1, "hi");
+        doc.order.remove(Integer.valueOf(1));
+        history.record(EditHistory.OP_REMOVE, 1);
+
+        assertEquals(Arrays.asList(0), doc.order);
+        assertTrue(history.undo());
+        assertEquals(Arrays.asList(1, 0), doc.order);
+        assertEquals("hi", doc.texts[1]);
+        assertTrue(history.undo());
+        assertEquals(null, doc.texts[1]);
+        assertTrue(history.undo());
+        assertEquals(Arrays.asList(0, 1), doc.order);
+        assertTrue(history.undo());
+        assertEquals(5f, doc.positions[0], 0f);
+        history.move(-10);
+        assertTrue(doc.order.isEmpty());
+        assertFalse(history.canUndo());
+
+        history.move(10);
+        assertEquals(Arrays.asList(0), doc.order);
+        assertEquals(8f, doc.positions[0], 0f);
+        assertEquals("hi", doc.texts[1]);
+        assertFalse(history.redo());
+    }
+
+    @Test
+    public void newEditDropsRedoTail() {
+        Doc doc = new Doc();
+        EditHistory history = new EditHistory(doc);
+        doc.move(history, 0, 1);
+        doc.move(history, 0, 2);
+        history.undo();
+        doc.move(history, 0, 10);
+        assertEquals(11f, doc.positions[0], 0f);
+        assertFalse(history.canRedo());
+        history.undo();
+        assertEquals(1f, doc.positions[0], 0f);
+        history.redo();
+        assertEquals(11f, doc.positions[0], 0f);
+    }
+
+    @Test
+    public void deepUndoReplaysFromNearestCheckpoint() {
+        Doc doc = new Doc();
+        EditHistory history = new EditHistory(doc, 1000);
+        for (int i = 0; i < 1000; i++) {
+            doc.move(history, 0, 1);
+        }
+
+        doc.applied = 0;
+        history.move(-990);
+        assertEquals(10f, doc.positions[0], 0f);
+        assertEquals(1, doc.restores);
+        assertTrue(doc.applied < EditHistory.CHECKPOINT_INTERVAL);
+
+        doc.applied = 0;
+        history.undo();
+        assertEquals(9f, doc.positions[0], 0f);
+        assertTrue(doc.applied < EditHistory.CHECKPOINT_INTERVAL);
+    }
+
+    @Test
+    public void fullRingDropsOldestBlock() {
+        Doc doc = new Doc();
+        EditHistory history = new EditHistory(doc, 2 * EditHistory.CHECKPOINT_INTERVAL);
+        int steps = 5 * EditHistory.CHECKPOINT_INTERVAL + 3;
+        for (int i = 0; i < steps; i++) {
+            doc.move(history, 0, 1);
+        }
+        assertTrue(history.getUndoCount() <= 2 * EditHistory.CHECKPOINT_INTERVAL);
+        assertTrue(history.getUndoCount() > EditHistory.CHECKPOINT_INTERVAL);
+
+        int undoable = history.getUndoCount();
+        while (history.undo()) {
+            // 撤销到最旧能到的位置
+        }
+        assertEquals(steps - undoable, doc.positions[0], 0f);
+        history.move(undoable);
+        assertEquals(steps, doc.positions[0], 0f);
+    }
+
+    @Test
+    public void trimReportsOnlyObjectsThatCanComeBack() {
+        Doc doc = new Doc();
+        final EditHistory history = new EditHistory(doc, EditHistory.CHECKPOINT_INTERVAL);
+        final List<Object> trimmed = new ArrayList<>();
+        history.setOnTrimListener(new EditHistory.OnTrimListener() {
+            @Override
+            public void onTrimmed(Object oldest) {
+                trimmed.add(oldest);
+            }
+        });
+        doc.positions[1] = 1;
+        doc.order.add(1);
+        history.record(EditHistory.OP_ADD, 1, 1, 0, 0, 0, 0, 0);
+        doc.order.remove(Integer.valueOf(1));
+        history.record(EditHistory.OP_REMOVE, 1);
+        assertTrue(history.isReferenced(1));
+        assertTrue(trimmed.isEmpty());
+
+        for (int i = 2; i < EditHistory.CHECKPOINT_INTERVAL; i++) {
+            doc.move(history, 0, 1);
+        }
+        assertTrue(trimmed.isEmpty());
+        // 第一块被丢掉，对象 1 的增删都撤销不回来了
+        doc.move(history, 0, 1);
+        assertEquals(1, trimmed.size());
+        assertFalse(history.isReferenced(1));
+        assertFalse(((List<?>) ((Object[]) trimmed.get(0))[1]).contains(1));
+        assertTrue(history.isReferenced(0));
+
+        history.clear();
+        assertEquals(2, trimmed.size());
+        assertFalse(history.isReferenced(0));
+    }
+
+    @Test
+    public void recordsDuringReplayAreIgnored() {
+        final EditHistory[] holder = new EditHistory[1];
+        Doc doc = new Doc() {
+            @Override
+            public void apply(byte op, int id, float[] args, int offset, String text) {
+                super.apply(op, id, args, offset, text);
+                holder[0].record(EditHistory.OP_TRANSFORM, id, args[offset], 0, 0, 0, 0, 0);
+            }
+        };
+        EditHistory history = new EditHistory(doc);
+        holder[0] = history;
+        doc.move(history, 0, 1);
+        doc.move(history, 0, 1);
+        history.undo();
+        history.redo();
+        assertEquals(2, history.getUndoCount());
+        assertEquals(2f, doc.positions[0], 0f);
+    }
+}
@@ -0,0 +1,114 @@
+package com.zzt.library;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.ShapeDrawable;
+import android.graphics.drawable.shapes.OvalShape;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * 轮播滚动若干帧，统计当前线程在滚动和绘制中分配的对象数，稳定状态下应该为 0
+ *
+ * 直接调用滚动视图的 draw，它自己的层类型不起作用；卡片的层类型在 onCreateView 里固定，
+ * 后来从复用池取出的卡片和一开始挂上的配置一样。应用关掉了硬件加速，层会退化成 drawing cache，
+ * 这里不测那条路径：没挂到窗口上的 view 每次重建 cache 都 new 一个 Canvas，挂上以后用的是
+ * AttachInfo 里共用的那个，测出来的分配和线上不一样。
+ */
+public class DrawAllocationTest extends AndroidTestCase {
+
+    private static final int CARD_COUNT = 40;
+    private static final int CARD_WIDTH = 120;
+    private static final int CARD_HEIGHT = 160;
+    private static final int VIEWPORT_WIDTH = 480;
+    private static final int FRAMES = 300;
+    private static final int STEP = 7;
+
+    private BooheeScrollView mScrollView;
+    private Canvas mCanvas;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // 位图内容走 shader 路径；比卡片小，FIT_CENTER 下有绘制矩阵
+        Bitmap bitmap = Bitmap.createBitmap(CARD_WIDTH / 2, CARD_WIDTH / 2, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.BLUE);
+        final Drawable image = new BitmapDrawable(getContext().getResources(), bitmap);
+        final Drawable mask = new ShapeDrawable(new OvalShape());
+
+        mScrollView = new BooheeScrollView(getContext());
+        mScrollView.setAdapter(new CarouselAdapter() {
+            @Override
+            public int getCount() {
+                return CARD_COUNT;
+            }
+
+            @Override
+            public int getItemWidth(int position) {
+                return CARD_WIDTH;
+            }
+
+            @Override
+            public View onCreateView(ViewGroup parent) {
+                BezelImageView view = new BezelImageView(getContext());
+                view.setLayerType(View.LAYER_TYPE_NONE, null);
+                view.setMaskDrawable(mask);
+                view.setLayoutParams(new ViewGroup.LayoutParams(CARD_WIDTH, CARD_HEIGHT));
+                return view;
+            }
+
+            @Override
+            public void onBindView(View view, int position) {
+                ((BezelImageView) view).setImageDrawable(image);
+            }
+        });
+
+        mScrollView.measure(View.MeasureSpec.makeMeasureSpec(VIEWPORT_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(CARD_HEIGHT, View.MeasureSpec.EXACTLY));
+        mScrollView.layout(0, 0, VIEWPORT_WIDTH, CARD_HEIGHT);
+        mCanvas = new Canvas(Bitmap.createBitmap(VIEWPORT_WIDTH, CARD_HEIGHT, Bitmap.Config.ARGB_8888));
+    }
+
+    private void scroll(int frames) {
+        int range = CARD_COUNT * CARD_WIDTH - VIEWPORT_WIDTH;
+        int x = 0;
+        int direction = 1;
+        for (int i = 0; i < frames; i++) {
+            x += direction * STEP;
+            if (x <= 0 || x >= range) {
+                direction = -direction;
+            }
+            mScrollView.scrollTo(x, 0);
+            mScrollView.draw(mCanvas);
+        }
+    }
+
+    public void testScrollingCarouselDoesNotAllocate() {
+        // 来回滚一遍，让复用池里的卡片都创建出来
+        scroll(2 * CARD_COUNT * CARD_WIDTH / STEP);
+
+        assertEquals("objects allocated while scrolling " + FRAMES + " frames",
+                0, countAllocations(FRAMES));
+    }
+
+    /**
+     * 这组接口在 API 23 标记为废弃，但只有它能按线程数对象个数；
+     * Debug.getRuntimeStat("art.gc.bytes-allocated") 是整个进程的，而且按 TLAB 计，小对象看不出来
+     */
+    @SuppressWarnings("deprecation")
+    private int countAllocations(int frames) {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            scroll(frames);
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        return Debug.getThreadAllocCount();
+    }
+}
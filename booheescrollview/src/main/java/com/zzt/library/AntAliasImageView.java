@@ -12,6 +12,12 @@ import android.widget.ImageView;
  */
 public class AntAliasImageView extends ImageView {
 
+    /**
+     * 每帧都要设，共用一个避免绘制时分配
+     */
+    static final PaintFlagsDrawFilter ANTI_ALIAS_FILTER =
+            new PaintFlagsDrawFilter(0, Paint.ANTI_ALIAS_FLAG|Paint.FILTER_BITMAP_FLAG);
+
     public AntAliasImageView(Context context) {
         super(context);
         setLayerType(LAYER_TYPE_HARDWARE, null);
@@ -29,13 +35,13 @@ public class AntAliasImageView extends ImageView {
 
     @Override
     protected void onDraw(Canvas canvas) {
-        canvas.setDrawFilter(new PaintFlagsDrawFilter(0, Paint.ANTI_ALIAS_FLAG|Paint.FILTER_BITMAP_FLAG));
+        canvas.setDrawFilter(ANTI_ALIAS_FILTER);
         super.onDraw(canvas);
     }
 
     @Override
     protected void dispatchDraw(Canvas canvas) {
-        canvas.setDrawFilter(new PaintFlagsDrawFilter(0, Paint.ANTI_ALIAS_FLAG|Paint.FILTER_BITMAP_FLAG));
+        canvas.setDrawFilter(ANTI_ALIAS_FILTER);
         super.dispatchDraw(canvas);
     }
 }
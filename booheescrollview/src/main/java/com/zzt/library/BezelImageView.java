@@ -19,15 +19,18 @@ package com.zzt.library;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
 import android.graphics.Canvas;
 import android.graphics.ColorMatrix;
 import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.PaintFlagsDrawFilter;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.graphics.Shader;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
@@ -40,13 +43,17 @@ import static com.zzt.library.R.*;
  * An {@link android.widget.ImageView} that draws its contents inside a mask and draws a border
  * drawable on top. This is useful for applying a beveled look to image contents, but is also
  * flexible enough for use with other desired aesthetics.
+ *
+ * <p>内容是 {@link BitmapDrawable} 时默认直接在输出画布上画：遮罩预先画成一张 ALPHA_8 位图，
+ * 内容图作为 {@link BitmapShader} 给这张遮罩上色，不需要 saveLayer 的离屏缓冲也不需要缓存位图。
+ * 其他类型的内容或者关掉 {@code shaderMask} 时退回原来的离屏合成。</p>
  */
 public class BezelImageView extends ImageView {
     private Paint mBlackPaint;
     private Paint mMaskedPaint;
 
-    private Rect mBounds;
-    private RectF mBoundsF;
+    private final Rect mBounds = new Rect();
+    private final RectF mBoundsF = new RectF();
 
     private Drawable mBorderDrawable;
     private Drawable mMaskDrawable;
@@ -56,9 +63,31 @@ public class BezelImageView extends ImageView {
 
     private boolean mCacheValid = false;
     private Bitmap mCacheBitmap;
+    private final Canvas mCacheCanvas = new Canvas();
     private int mCachedWidth;
     private int mCachedHeight;
 
+    private boolean mShaderMask = true;
+    /**
+     * 遮罩的 alpha，每像素一个字节，尺寸或遮罩变化时重画
+     */
+    private Bitmap mMaskBitmap;
+    private final Canvas mMaskCanvas = new Canvas();
+    private boolean mMaskValid = false;
+    private final Paint mShaderPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+    private BitmapShader mContentShader;
+    private Bitmap mShaderBitmap;
+    private final Matrix mShaderMatrix = new Matrix();
+    private final RectF mContentRect = new RectF();
+    /**
+     * ImageView 没有绘制矩阵时 getImageMatrix 每次 new 一个单位矩阵，FIT_XY、刚好铺满、
+     * 单位的 MATRIX 都是这样。是不是单位矩阵只在内容、边界或 scaleType 变化后查一次
+     */
+    private boolean mImageMatrixValid;
+    private boolean mImageMatrixIdentity;
+    private Drawable mMatrixDrawable;
+    private final Rect mMatrixDrawableBounds = new Rect();
+
     public BezelImageView(Context context) {
         this(context, null);
     }
@@ -70,7 +99,6 @@ public class BezelImageView extends ImageView {
     public BezelImageView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
 
-        setLayerType(LAYER_TYPE_HARDWARE, null);//性能要求
         // Attribute initialization
         final TypedArray a = context.obtainStyledAttributes(attrs, styleable.BezelImageView,
                 defStyle, 0);
@@ -88,6 +116,7 @@ public class BezelImageView extends ImageView {
 
         mDesaturateOnPress = a.getBoolean(styleable.BezelImageView_desaturateOnPress,
                 mDesaturateOnPress);
+        mShaderMask = a.getBoolean(styleable.BezelImageView_shaderMask, mShaderMask);
 
         a.recycle();
 
@@ -102,6 +131,8 @@ public class BezelImageView extends ImageView {
 
         // Always want a cache allocated.
         mCacheBitmap = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+        mCacheCanvas.setBitmap(mCacheBitmap);
+        mCacheCanvas.setDrawFilter(AntAliasImageView.ANTI_ALIAS_FILTER);
 
         if (mDesaturateOnPress) {
             // Create a desaturate color filter for pressed state.
@@ -114,8 +145,8 @@ public class BezelImageView extends ImageView {
     @Override
     protected boolean setFrame(int l, int t, int r, int b) {
         final boolean changed = super.setFrame(l, t, r, b);
-        mBounds = new Rect(0, 0, r - l, b - t);
-        mBoundsF = new RectF(mBounds);
+        mBounds.set(0, 0, r - l, b - t);
+        mBoundsF.set(mBounds);
 
         if (mBorderDrawable != null) {
             mBorderDrawable.setBounds(mBounds);
@@ -126,6 +157,8 @@ public class BezelImageView extends ImageView {
 
         if (changed) {
             mCacheValid = false;
+            mMaskValid = false;
+            mImageMatrixValid = false;
         }
 
         return changed;
@@ -134,10 +167,6 @@ public class BezelImageView extends ImageView {
     @Override
     protected void onDraw(Canvas canvas) {
 
-        if (mBounds == null) {
-            return;
-        }
-
         int width = mBounds.width();
         int height = mBounds.height();
 
@@ -145,7 +174,11 @@ public class BezelImageView extends ImageView {
             return;
         }
 
-        canvas.setDrawFilter(new PaintFlagsDrawFilter(0, Paint.ANTI_ALIAS_FLAG|Paint.FILTER_BITMAP_FLAG));
+        canvas.setDrawFilter(AntAliasImageView.ANTI_ALIAS_FILTER);
+
+        if (mShaderMask && drawWithShader(canvas, width, height)) {
+            return;
+        }
 
         if (!mCacheValid || width != mCachedWidth || height != mCachedHeight) {
 
@@ -158,12 +191,12 @@ public class BezelImageView extends ImageView {
                 mCacheBitmap.recycle();
                 //noinspection AndroidLintDrawAllocation
                 mCacheBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                mCacheCanvas.setBitmap(mCacheBitmap);
                 mCachedWidth = width;
                 mCachedHeight = height;
             }
 
-            Canvas cacheCanvas = new Canvas(mCacheBitmap);
-            cacheCanvas.setDrawFilter(new PaintFlagsDrawFilter(0, Paint.ANTI_ALIAS_FLAG|Paint.FILTER_BITMAP_FLAG));
+            Canvas cacheCanvas = mCacheCanvas;
             if (mMaskDrawable != null) {
                 int sc = cacheCanvas.save();
                 mMaskDrawable.draw(cacheCanvas);
@@ -194,6 +227,93 @@ public class BezelImageView extends ImageView {
         canvas.drawBitmap(mCacheBitmap, mBounds.left, mBounds.top, null);
     }
 
+    /**
+     * 内容不是单张位图时返回 false，由调用方走离屏合成
+     */
+    private boolean drawWithShader(Canvas canvas, int width, int height) {
+        Drawable content = getDrawable();
+        if (!(content instanceof BitmapDrawable)) {
+            return false;
+        }
+        Bitmap bitmap = ((BitmapDrawable) content).getBitmap();
+        if (bitmap == null || bitmap.isRecycled()) {
+            return false;
+        }
+
+        boolean resized = mMaskBitmap == null
+                || mMaskBitmap.getWidth() != width || mMaskBitmap.getHeight() != height;
+        if (mMaskDrawable != null && (!mMaskValid || resized)) {
+            if (resized) {
+                if (mMaskBitmap != null) {
+                    mMaskBitmap.recycle();
+                }
+                //noinspection AndroidLintDrawAllocation
+                mMaskBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+                mMaskCanvas.setBitmap(mMaskBitmap);
+            } else {
+                mMaskBitmap.eraseColor(0);
+            }
+            mMaskDrawable.draw(mMaskCanvas);
+            mMaskValid = true;
+        }
+
+        if (bitmap != mShaderBitmap) {
+            //noinspection AndroidLintDrawAllocation
+            mContentShader = new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+            mShaderBitmap = bitmap;
+            mShaderPaint.setShader(mContentShader);
+        }
+
+        // 和 ImageView 画内容时的变换一致：位图到 drawable 边界，再按 scaleType 的矩阵，最后是 padding
+        Rect drawableBounds = content.getBounds();
+        mShaderMatrix.setScale(drawableBounds.width() / (float) bitmap.getWidth(),
+                drawableBounds.height() / (float) bitmap.getHeight());
+        mShaderMatrix.postTranslate(drawableBounds.left, drawableBounds.top);
+        if (!mImageMatrixValid || content != mMatrixDrawable
+                || !drawableBounds.equals(mMatrixDrawableBounds)) {
+            mImageMatrixIdentity = getImageMatrix().isIdentity();
+            mMatrixDrawable = content;
+            mMatrixDrawableBounds.set(drawableBounds);
+            mImageMatrixValid = true;
+        }
+        if (!mImageMatrixIdentity) {
+            // 有绘制矩阵时返回的就是它本身，不分配
+            mShaderMatrix.postConcat(getImageMatrix());
+        }
+        mShaderMatrix.postTranslate(getPaddingLeft(), getPaddingTop());
+        mContentShader.setLocalMatrix(mShaderMatrix);
+        mShaderPaint.setColorFilter((mDesaturateOnPress && isPressed()) ? mDesaturateColorFilter : null);
+
+        // CLAMP 会把边缘像素拉伸出去，裁到内容实际所在的矩形
+        mContentRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        mShaderMatrix.mapRect(mContentRect);
+        int sc = canvas.save();
+        canvas.clipRect(mContentRect);
+        if (mMaskDrawable != null) {
+            canvas.drawBitmap(mMaskBitmap, mBounds.left, mBounds.top, mShaderPaint);
+        } else {
+            canvas.drawRect(mContentRect, mShaderPaint);
+        }
+        canvas.restoreToCount(sc);
+
+        if (mBorderDrawable != null) {
+            mBorderDrawable.draw(canvas);
+        }
+        return true;
+    }
+
+    @Override
+    public void setScaleType(ScaleType scaleType) {
+        super.setScaleType(scaleType);
+        mImageMatrixValid = false;
+    }
+
+    @Override
+    public void setImageMatrix(Matrix matrix) {
+        super.setImageMatrix(matrix);
+        mImageMatrixValid = false;
+    }
+
     @Override
     protected void drawableStateChanged() {
         super.drawableStateChanged();
@@ -202,6 +322,10 @@ public class BezelImageView extends ImageView {
         }
         if (mMaskDrawable != null && mMaskDrawable.isStateful()) {
             mMaskDrawable.setState(getDrawableState());
+            mMaskValid = false;
+        }
+        if (mDesaturateOnPress) {
+            invalidate();
         }
         if (isDuplicateParentStateEnabled()) {
             ViewCompat.postInvalidateOnAnimation(this);
@@ -211,6 +335,9 @@ public class BezelImageView extends ImageView {
     @Override
     public void invalidateDrawable(Drawable who) {
         if (who == mBorderDrawable || who == mMaskDrawable) {
+            if (who == mMaskDrawable) {
+                mMaskValid = false;
+            }
             invalidate();
         } else {
             super.invalidateDrawable(who);
@@ -226,7 +353,18 @@ public class BezelImageView extends ImageView {
         mMaskDrawable = drawable;
         if (mMaskDrawable != null) {
             mMaskDrawable.setCallback(this);
+            mMaskDrawable.setBounds(mBounds);
         }
+        mMaskValid = false;
+        invalidate();
+    }
+
+    /**
+     * 是否用 shader 直接画遮罩，关掉时始终走离屏合成
+     */
+    public void setShaderMask(boolean shaderMask) {
+        mShaderMask = shaderMask;
+        invalidate();
     }
 
 }
@@ -4,7 +4,6 @@ import android.animation.Animator;
 import android.animation.ObjectAnimator;
 import android.content.Context;
 import android.util.AttributeSet;
-import android.util.Property;
 import android.view.MotionEvent;
 import android.view.VelocityTracker;
 import android.view.View;
@@ -32,9 +31,22 @@ public class BooheeScrollView extends HorizontalScrollView{
     private boolean mIsDragging;
     private boolean doReboundAnim = false;
     private View[] mChildViews;
-    private View centerView;
+    /**
+     * 子 view 的左右边界，从左到右排列所以都是有序的，布局后更新
+     */
+    private int[] mChildLefts = new int[0];
+    private int[] mChildRights = new int[0];
+    private boolean mChildBoundsDirty = true;
+    /**
+     * 虚拟化模式下的内容布局，普通模式为 null
+     */
+    private CarouselLayout mCarousel;
     private int childCount = 0;
-    private int centerViewIndex;
+    private int centerViewIndex = -1;
+    /**
+     * 松手时算出的吸附目标
+     */
+    private int mSnapIndex = -1;
     private int mCurrentScrollX,mCurrentScrollXEnd;
     private int dstScrollX;
     private int mWidth;
@@ -42,6 +54,15 @@ public class BooheeScrollView extends HorizontalScrollView{
     public static final int REBOUND_ANIM = 1;
     private int ANIM_TYPE = NORMAL_ANIM;
 
+    /**
+     * 滚动阶段：静止、手指拖动、松手后滑向另一个卡片、松手后回到当前卡片中间
+     */
+    public static final int SCROLL_PHASE_IDLE = 0;
+    public static final int SCROLL_PHASE_DRAGGING = 1;
+    public static final int SCROLL_PHASE_FLINGING = 2;
+    public static final int SCROLL_PHASE_SETTLING = 3;
+    private int mScrollPhase = SCROLL_PHASE_IDLE;
+
 
     public BooheeScrollView(Context context) {
         this(context, null, 0);
@@ -62,7 +83,8 @@ public class BooheeScrollView extends HorizontalScrollView{
         mTouchSlop = viewConfiguration.getScaledTouchSlop();
         mMaxVelocity = viewConfiguration.getScaledMaximumFlingVelocity();
 
-        scrollAnimator = ObjectAnimator.ofInt(this, scrollAnim, 0, 0);
+        // 按属性名走 setScrollX(int)，不像 Property<Integer> 那样每帧装箱
+        scrollAnimator = ObjectAnimator.ofInt(this, "scrollX", 0, 0);
         scrollAnimator.setDuration(DEFAULT_DURATION);
         scrollAnimator.setInterpolator(new DecelerateInterpolator());
         scrollAnimator.addListener(new Animator.AnimatorListener() {
@@ -73,7 +95,10 @@ public class BooheeScrollView extends HorizontalScrollView{
 
             @Override
             public void onAnimationEnd(Animator animation) {
-
+                // 按下时 cancel 也会走到这里，那时已经切到拖动状态，不会误报静止
+                if (ANIM_TYPE == NORMAL_ANIM && isAnimatingToSnap()) {
+                    setScrollPhase(SCROLL_PHASE_IDLE);
+                }
             }
 
             @Override
@@ -105,6 +130,14 @@ public class BooheeScrollView extends HorizontalScrollView{
                     scrollTo(x, 0);
                 }
             }
+
+            @Override
+            public void onSpringAtRest(Spring spring) {
+                if (ANIM_TYPE == REBOUND_ANIM && isAnimatingToSnap()) {
+                    doReboundAnim = false;
+                    setScrollPhase(SCROLL_PHASE_IDLE);
+                }
+            }
         });
     }
 
@@ -135,51 +168,103 @@ public class BooheeScrollView extends HorizontalScrollView{
         super.onScrollChanged(l, t, oldl, oldt);
         mCurrentScrollX = l;
         mCurrentScrollXEnd = l + mWidth;
+        if (mCarousel != null) {
+            mCarousel.setWindow(mCurrentScrollX, mCurrentScrollXEnd);
+        }
         setVisibleChildRotation();
     }
 
     /**
-     * 旋转可见的部分
+     * 旋转可见的部分，只遍历和窗口相交的子 view
      * */
      private int scrollViewCenterX;
      private int viewLeft, viewRight;
      private float rotation;
      private float windowCenterX;
-     private boolean isFirstVisible = false;
      private void setVisibleChildRotation(){
-        isFirstVisible = false;
+        if (mChildViews == null && mCarousel == null) {
+            return;
+        }
+        if (mChildBoundsDirty) {
+            updateChildBounds();
+        }
         scrollViewCenterX = (mCurrentScrollX + mCurrentScrollXEnd)/2;
         windowCenterX = mCurrentScrollX + mWidth/2;
 
-        for(int i=0; i<childCount; ++i){
-            viewLeft = mChildViews[i].getLeft();
-            viewRight= mChildViews[i].getRight();
-            if (mCurrentScrollX <= viewLeft && mCurrentScrollXEnd >= viewLeft
-                    || mCurrentScrollX <= viewRight && mCurrentScrollXEnd >= viewRight){
-                isFirstVisible = true;
-                rotation = (((viewLeft +viewRight)/2 - scrollViewCenterX) *10 / (float)mWidth)*1.5f;
-                mChildViews[i].setRotation(rotation);
-                mChildViews[i].setTranslationY(Math.abs(rotation * 3));
-                /**
-                 * 找出处于屏幕中间的view
-                 * */
-                if(!(viewLeft <= windowCenterX && viewRight >= windowCenterX)){
-                    continue;
-                } else if(centerView != mChildViews[i]) {
-                    centerView = mChildViews[i];
-                    centerViewIndex = i;
-                    if(mScrollChangeListener != null ){
-                            mScrollChangeListener.OnScrollChange(i);
-
-                    }
-                }
-            }else if(isFirstVisible){
+        for(int i = firstVisibleChild(); i<childCount; ++i){
+            viewLeft = mChildLefts[i];
+            viewRight= mChildRights[i];
+            if (viewLeft > mCurrentScrollXEnd) {
                 /**
                  * 不再遍历后面不可见部分
                  * */
                 break;
             }
+            View child = getChildViewAt(i);
+            if (child != null) {
+                rotation = (((viewLeft +viewRight)/2 - scrollViewCenterX) *10 / (float)mWidth)*1.5f;
+                child.setRotation(rotation);
+                child.setTranslationY(Math.abs(rotation * 3));
+            }
+            /**
+             * 找出处于屏幕中间的view，虚拟化时 view 会复用，所以按位置比较
+             * */
+            if(viewLeft <= windowCenterX && viewRight >= windowCenterX && centerViewIndex != i) {
+                centerViewIndex = i;
+                if(mScrollChangeListener != null ){
+                    mScrollChangeListener.OnScrollChange(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * 二分查找第一个右边界不小于窗口左边的子 view
+     */
+    private int firstVisibleChild() {
+        int lo = 0;
+        int hi = childCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (mChildRights[mid] < mCurrentScrollX) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void updateChildBounds() {
+        if (mChildLefts.length != childCount) {
+            mChildLefts = new int[childCount];
+            mChildRights = new int[childCount];
+        }
+        for (int i = 0; i < childCount; ++i) {
+            if (mCarousel != null) {
+                mChildLefts[i] = mCarousel.getItemLeft(i);
+                mChildRights[i] = mCarousel.getItemRight(i);
+            } else {
+                mChildLefts[i] = mChildViews[i].getLeft();
+                mChildRights[i] = mChildViews[i].getRight();
+            }
+        }
+        mChildBoundsDirty = false;
+    }
+
+    private View getChildViewAt(int position) {
+        return mCarousel != null ? mCarousel.getViewAt(position) : mChildViews[position];
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        mChildBoundsDirty = true;
+        mWidth = getWidth();
+        if (mCarousel != null) {
+            mCarousel.setWindow(getScrollX(), getScrollX() + mWidth);
         }
+        setVisibleChildRotation();
     }
 
     private int scrollDx;
@@ -209,6 +294,11 @@ public class BooheeScrollView extends HorizontalScrollView{
         mVelocityTracker.clear();
 
         calcScrollDst(initialVelocity);
+        setScrollPhase(mSnapIndex >= 0 && mSnapIndex != centerViewIndex
+                ? SCROLL_PHASE_FLINGING : SCROLL_PHASE_SETTLING);
+        if (mSnapListener != null && mSnapIndex >= 0) {
+            mSnapListener.onSnapPredicted(mSnapIndex);
+        }
 
         if(ANIM_TYPE == NORMAL_ANIM)
             startScrollAnim();
@@ -217,26 +307,34 @@ public class BooheeScrollView extends HorizontalScrollView{
     }
 
     private void calcScrollDst(int initialVelocity){
+        if (centerViewIndex < 0) {
+            dstScrollX = mCurrentScrollX;
+            mSnapIndex = -1;
+            return;
+        }
         if(Math.abs(initialVelocity)<300){
-            dstScrollX = centerView.getLeft() + centerView.getWidth()/2 - mWidth/2;
+            mSnapIndex = centerViewIndex;
+            dstScrollX = centeredScrollX(mSnapIndex);
             startScrollAnim();
             return ;
         }
 
         if(initialVelocity>0){
-            if(centerViewIndex>=2){
-                dstScrollX = mChildViews[centerViewIndex-1].getLeft() + mChildViews[centerViewIndex-1].getWidth()/2 - mWidth/2;
-            }else{
-                dstScrollX = centerView.getLeft() + centerView.getWidth()/2 - mWidth/2;
-            }
+            mSnapIndex = centerViewIndex>=2 ? centerViewIndex - 1 : centerViewIndex;
         }else{
-            if(centerViewIndex <= childCount - 2){
-                dstScrollX = mChildViews[centerViewIndex+1].getLeft() + mChildViews[centerViewIndex+1].getWidth()/2 - mWidth/2;
-            }else{
-                dstScrollX = centerView.getLeft() + centerView.getWidth()/2 - mWidth/2;
-            }
+            mSnapIndex = centerViewIndex <= childCount - 2 ? centerViewIndex + 1 : centerViewIndex;
         }
+        dstScrollX = centeredScrollX(mSnapIndex);
+    }
 
+    /**
+     * 第 index 个子 view 居中时的 scrollX
+     */
+    private int centeredScrollX(int index) {
+        if (mChildBoundsDirty) {
+            updateChildBounds();
+        }
+        return (mChildLefts[index] + mChildRights[index]) / 2 - mWidth / 2;
     }
 
     @Override
@@ -251,6 +349,8 @@ public class BooheeScrollView extends HorizontalScrollView{
                 view.setPivotX(view.getWidth()/2);
                 view.setPivotY(view.getHeight());
             }
+        }
+        if (mChildViews != null || mCarousel != null) {
             mCurrentScrollX = getScrollX();
             mCurrentScrollXEnd = mCurrentScrollX + mWidth;
             setVisibleChildRotation();
@@ -266,6 +366,10 @@ public class BooheeScrollView extends HorizontalScrollView{
                 mLastMotionY = ev.getY();
                 if(onDownAllowDrag(mLastMotionX, mLastMotionY)){
                     mIsDragging = false;// action down 未开始drag
+                    // 按住了正在吸附的轮播，先切到拖动，停下的动画和弹簧不再报静止
+                    if (isAnimatingToSnap()) {
+                        setScrollPhase(SCROLL_PHASE_DRAGGING);
+                    }
                     if(ANIM_TYPE == NORMAL_ANIM)
                         stopScrolling();
                     else
@@ -277,11 +381,14 @@ public class BooheeScrollView extends HorizontalScrollView{
                 float y = ev.getY();
                 if(checkTouchSlop(x - mLastMotionX, y - mLastMotionY)){
                     mIsDragging = true;
+                    setScrollPhase(SCROLL_PHASE_DRAGGING);
                     mLastMotionX = x;
                     mLastMotionY = y;
                 }
                 break;
             case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                // 被父容器拦截时只收到 CANCEL，同样要吸附并离开拖动状态
                 mIsDragging = false;
                 onActionUp();
                 break;
@@ -297,11 +404,14 @@ public class BooheeScrollView extends HorizontalScrollView{
             case MotionEvent.ACTION_MOVE:
                 float x = ev.getX();
                 float y = ev.getY();
+                setScrollPhase(SCROLL_PHASE_DRAGGING);
                 onMoveEvent(x - mLastMotionX, y - mLastMotionY);
                 mLastMotionX = x;
                 mLastMotionY = y;
                 break;
             case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                // 被父容器拦截时只收到 CANCEL，同样要吸附并离开拖动状态
                 mIsDragging = false;
                 onActionUp();
                 break;
@@ -311,21 +421,35 @@ public class BooheeScrollView extends HorizontalScrollView{
 
     public void setChildViews(View[] views){
         mChildViews = views;
+        mCarousel = null;
         childCount = mChildViews.length;
+        centerViewIndex = -1;
+        mChildBoundsDirty = true;
     }
 
-    private int dx;
-    Property<BooheeScrollView, Integer> scrollAnim = new Property<BooheeScrollView, Integer>(Integer.class, "mCurrentScrollX"){
-        @Override
-        public Integer get(BooheeScrollView object) {
-            return object.mCurrentScrollX;
-        }
+    /**
+     * 虚拟化模式：替换掉 xml 里的内容布局，只创建窗口附近的卡片，滑出去的回收复用。
+     * 和 {@link #setChildViews} 二选一
+     */
+    public void setAdapter(CarouselAdapter adapter){
+        removeAllViews();
+        mChildViews = null;
+        mCarousel = new CarouselLayout(getContext(), adapter);
+        addView(mCarousel, new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
+        childCount = mCarousel.getCount();
+        centerViewIndex = -1;
+        mChildBoundsDirty = true;
+    }
 
-        @Override
-        public void set(BooheeScrollView object, Integer value) {
-            scrollTo(value, 0);
+    /**
+     * 虚拟化模式下把挂载的卡片都交给 {@link CarouselAdapter#onRecycleView}，
+     * 页面销毁时调用，卡片持有的图片才能还回去
+     */
+    public void recycleChildViews(){
+        if (mCarousel != null) {
+            mCarousel.recycleAll();
         }
-    };
+    }
 
     private OnScrollChangeListener mScrollChangeListener;
     public interface OnScrollChangeListener{
@@ -336,6 +460,51 @@ public class BooheeScrollView extends HorizontalScrollView{
         mScrollChangeListener = scrollChangeListener;
     }
 
+    private OnSnapListener mSnapListener;
+
+    /**
+     * 松手时回调最终会停在中间的子 view，可以提前准备目标位置的内容。
+     * 慢速松手时 calcScrollDst 已经启动了吸附动画，回调里不要假设还没开始滚
+     */
+    public interface OnSnapListener{
+        void onSnapPredicted(int targetIndex);
+    }
+
+    public void setSnapListener(OnSnapListener snapListener){
+        mSnapListener = snapListener;
+    }
+
+    private OnScrollPhaseListener mScrollPhaseListener;
+
+    /**
+     * 滚动阶段变化时回调，可以在滑动中只做低成本的预览，静止后再做完整的工作
+     */
+    public interface OnScrollPhaseListener{
+        void onScrollPhaseChanged(int phase);
+    }
+
+    public void setScrollPhaseListener(OnScrollPhaseListener scrollPhaseListener){
+        mScrollPhaseListener = scrollPhaseListener;
+    }
+
+    public int getScrollPhase() {
+        return mScrollPhase;
+    }
+
+    private boolean isAnimatingToSnap() {
+        return mScrollPhase == SCROLL_PHASE_FLINGING || mScrollPhase == SCROLL_PHASE_SETTLING;
+    }
+
+    private void setScrollPhase(int phase) {
+        if (mScrollPhase == phase) {
+            return;
+        }
+        mScrollPhase = phase;
+        if (mScrollPhaseListener != null) {
+            mScrollPhaseListener.onScrollPhaseChanged(phase);
+        }
+    }
+
     public void setAnimType(int animType){
         if(animType != NORMAL_ANIM && animType != REBOUND_ANIM ){
             throw new IllegalArgumentException("animType should be NORMAL_ANIM or REBOUND_ANIM");
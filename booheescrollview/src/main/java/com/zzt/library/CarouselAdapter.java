@@ -0,0 +1,30 @@
+package com.zzt.library;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * {@link BooheeScrollView#setAdapter} 用的数据源。
+ *
+ * 只有窗口内和两边各一个卡片会创建 view，滑出去的 view 回收后绑定给新进来的位置。
+ * 卡片宽度要在绑定前就能给出，用来计算总宽度和可见范围。
+ */
+public abstract class CarouselAdapter {
+
+    public abstract int getCount();
+
+    /**
+     * 第 position 个卡片的宽度，单位 px
+     */
+    public abstract int getItemWidth(int position);
+
+    public abstract View onCreateView(ViewGroup parent);
+
+    public abstract void onBindView(View view, int position);
+
+    /**
+     * view 滑出窗口被回收前调用，在这里释放它持有的图片
+     */
+    public void onRecycleView(View view) {
+    }
+}
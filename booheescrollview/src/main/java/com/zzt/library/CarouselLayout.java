@@ -0,0 +1,194 @@
+package com.zzt.library;
+
+import android.content.Context;
+import android.util.SparseArray;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+
+/**
+ * {@link BooheeScrollView} 虚拟化模式下的内容布局。
+ *
+ * 宽度是所有卡片宽度之和，但只挂载和窗口相交的卡片再加两边各 {@link #MARGIN_ITEMS} 个，
+ * 其余位置是空的。滑动时增删子 view 不走 requestLayout，只量、摆新挂上的那一个。
+ */
+class CarouselLayout extends ViewGroup {
+
+    /**
+     * 窗口外多保留的卡片数，快速滑动时不至于露出空白
+     */
+    private static final int MARGIN_ITEMS = 1;
+
+    private final CarouselAdapter mAdapter;
+    private final int mCount;
+    /**
+     * 第 i 个卡片的左边界，最后一个元素是总宽度
+     */
+    private final int[] mOffsets;
+    private final SparseArray<View> mAttached = new SparseArray<>();
+    private final ArrayList<View> mScrap = new ArrayList<>();
+
+    private int mFirst;
+    private int mLast = -1;
+    private int mWindowLeft;
+    private int mWindowRight;
+    private int mChildHeightSpec = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+
+    CarouselLayout(Context context, CarouselAdapter adapter) {
+        super(context);
+        mAdapter = adapter;
+        mCount = adapter.getCount();
+        mOffsets = new int[mCount + 1];
+        for (int i = 0; i < mCount; i++) {
+            mOffsets[i + 1] = mOffsets[i] + adapter.getItemWidth(i);
+        }
+        mWindowRight = context.getResources().getDisplayMetrics().widthPixels;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    int getItemLeft(int position) {
+        return mOffsets[position];
+    }
+
+    int getItemRight(int position) {
+        return mOffsets[position + 1];
+    }
+
+    /**
+     * 没挂载时返回 null
+     */
+    View getViewAt(int position) {
+        return mAttached.get(position);
+    }
+
+    /**
+     * 窗口移动后调用，挂上新进入范围的卡片，回收离开的
+     */
+    void setWindow(int left, int right) {
+        mWindowLeft = left;
+        mWindowRight = right;
+        fill(true);
+    }
+
+    /**
+     * 回收所有挂载的卡片，之后窗口再移动时重新绑定
+     */
+    void recycleAll() {
+        for (int i = mAttached.size() - 1; i >= 0; i--) {
+            View view = mAttached.valueAt(i);
+            removeViewInLayout(view);
+            mAdapter.onRecycleView(view);
+            mScrap.add(view);
+        }
+        mAttached.clear();
+        mFirst = 0;
+        mLast = -1;
+        invalidate();
+    }
+
+    private void fill(boolean layoutNewViews) {
+        int first = Math.max(0, firstItemEndingAfter(mWindowLeft) - MARGIN_ITEMS);
+        int last = Math.min(mCount - 1, firstItemEndingAfter(mWindowRight) + MARGIN_ITEMS);
+        if (first == mFirst && last == mLast) {
+            return;
+        }
+        for (int i = mAttached.size() - 1; i >= 0; i--) {
+            int position = mAttached.keyAt(i);
+            if (position < first || position > last) {
+                View view = mAttached.valueAt(i);
+                mAttached.removeAt(i);
+                removeViewInLayout(view);
+                mAdapter.onRecycleView(view);
+                mScrap.add(view);
+            }
+        }
+        for (int position = first; position <= last; position++) {
+            if (mAttached.get(position) != null) {
+                continue;
+            }
+            View view = mScrap.isEmpty() ? mAdapter.onCreateView(this) : mScrap.remove(mScrap.size() - 1);
+            mAdapter.onBindView(view, position);
+            LayoutParams params = view.getLayoutParams();
+            if (params == null) {
+                params = generateDefaultLayoutParams();
+            }
+            addViewInLayout(view, -1, params, true);
+            mAttached.put(position, view);
+            if (layoutNewViews) {
+                measureItem(view, position);
+                layoutItem(view, position);
+            }
+        }
+        mFirst = first;
+        mLast = last;
+        invalidate();
+    }
+
+    /**
+     * 二分查找第一个右边界大于 x 的卡片
+     */
+    private int firstItemEndingAfter(int x) {
+        int lo = 0;
+        int hi = mCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (mOffsets[mid + 1] <= x) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return Math.min(lo, mCount - 1);
+    }
+
+    private void measureItem(View view, int position) {
+        view.measure(MeasureSpec.makeMeasureSpec(getItemRight(position) - getItemLeft(position),
+                MeasureSpec.EXACTLY), mChildHeightSpec);
+    }
+
+    private void layoutItem(View view, int position) {
+        int left = getItemLeft(position);
+        view.layout(left, 0, left + view.getMeasuredWidth(), view.getMeasuredHeight());
+        // 旋转绕底边中点
+        view.setPivotX(view.getMeasuredWidth() / 2);
+        view.setPivotY(view.getMeasuredHeight());
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        mChildHeightSpec = getChildMeasureSpec(heightMeasureSpec, 0, LayoutParams.WRAP_CONTENT);
+        if (mCount > 0) {
+            fill(false);
+        }
+        int height = 0;
+        for (int i = 0; i < mAttached.size(); i++) {
+            View view = mAttached.valueAt(i);
+            measureItem(view, mAttached.keyAt(i));
+            height = Math.max(height, view.getMeasuredHeight());
+        }
+        setMeasuredDimension(mOffsets[mCount], resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        for (int i = 0; i < mAttached.size(); i++) {
+            layoutItem(mAttached.valueAt(i), mAttached.keyAt(i));
+        }
+    }
+
+    @Override
+    protected LayoutParams generateDefaultLayoutParams() {
+        return new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        // 和 BuildLayerLinearLayout 一样吃掉触摸，由 BooheeScrollView 处理拖动
+        return true;
+    }
+}